@@ -0,0 +1,168 @@
+package com.buildstash;
+
+import jenkins.util.SystemProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Client-side token bucket shared by all uploads on the controller that use the same API key.
+ * Paces Buildstash API calls so that bursts of concurrent uploads stay under the server's rate limits,
+ * and learns from throttling responses: a 429 or 503 pauses all callers for the {@code Retry-After}
+ * period and halves the rate, which then recovers gradually with successful calls.
+ * Limiters are keyed by a hash of the API key, so the key itself is not kept.
+ */
+final class ApiRateLimiter {
+
+    static final double REQUESTS_PER_SECOND = Double.parseDouble(SystemProperties.getString(
+            ApiRateLimiter.class.getName() + ".requestsPerSecond", "10"));
+    static final int BURST = SystemProperties.getInteger(ApiRateLimiter.class.getName() + ".burst", 20);
+
+    /** Pause when a throttling response has no usable {@code Retry-After} header. */
+    private static final Duration DEFAULT_PAUSE = Duration.ofSeconds(1);
+    /** Upper bound for a single pause, whatever the server asks for. */
+    private static final Duration MAX_PAUSE = Duration.ofMinutes(5);
+
+    private static final Map<String, ApiRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private final double maxRate;
+    private final double minRate;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+
+    // Guarded by this
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    /**
+     * @param requestsPerSecond Sustained rate when no throttling has been seen
+     * @param burst Calls that may be made at once after a quiet period
+     * @param nanoClock Source of {@link System#nanoTime()}-like timestamps
+     */
+    ApiRateLimiter(double requestsPerSecond, int burst, LongSupplier nanoClock) {
+        this.maxRate = Math.max(0.1, requestsPerSecond);
+        this.minRate = maxRate / 32;
+        this.capacity = Math.max(1, burst);
+        this.nanoClock = nanoClock;
+        this.rate = maxRate;
+        this.tokens = capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    /**
+     * Gets the limiter shared by all uploads using the given API key.
+     */
+    static ApiRateLimiter forApiKey(String apiKey) {
+        return LIMITERS.computeIfAbsent(hash(apiKey), k -> new ApiRateLimiter(REQUESTS_PER_SECOND, BURST, System::nanoTime));
+    }
+
+    private static String hash(String apiKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest((apiKey != null ? apiKey : "").getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Waits until a call may be made, and takes a token for it.
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryAcquire()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a token if one is available and no pause is in effect.
+     * @return 0 if a token was taken, otherwise the time to wait before trying again in nanoseconds
+     */
+    synchronized long tryAcquire() {
+        long now = nanoClock.getAsLong();
+        refill(now);
+        if (now - pausedUntilNanos < 0) {
+            return pausedUntilNanos - now;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+
+    /**
+     * Records a throttling response: pauses all callers and halves the rate.
+     * @param retryAfter The server's {@code Retry-After} period, or null if it didn't send one
+     * @return The pause applied
+     */
+    synchronized Duration onThrottled(Duration retryAfter) {
+        Duration pause = retryAfter != null && !retryAfter.isNegative() ? retryAfter : DEFAULT_PAUSE;
+        if (pause.compareTo(MAX_PAUSE) > 0) {
+            pause = MAX_PAUSE;
+        }
+        long now = nanoClock.getAsLong();
+        refill(now);
+        rate = Math.max(minRate, rate / 2);
+        tokens = 0;
+        long until = now + pause.toNanos();
+        if (until - pausedUntilNanos > 0) {
+            pausedUntilNanos = until;
+        }
+        return pause;
+    }
+
+    /**
+     * Records a call that was not throttled, letting the rate recover towards its maximum.
+     */
+    synchronized void onSuccess() {
+        if (rate < maxRate) {
+            rate = Math.min(maxRate, rate + maxRate / 20);
+        }
+    }
+
+    synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, given either in seconds or as an HTTP date.
+     * @return The period to wait, or null if the value is missing or invalid
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException e) {
+            // Not delta-seconds, try an HTTP date
+        }
+        try {
+            Duration until = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME));
+            return until.isNegative() ? Duration.ZERO : until;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.buildstash;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Checks artifact sizes against an absolute budget and/or a maximum growth over the
+ * last successful upload to the same stream and platform.
+ */
+public class ArtifactSizeGate {
+
+    /** Result applied to the build when a limit is exceeded and no other result is configured. */
+    public static final String DEFAULT_RESULT = "FAILURE";
+
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    private final Double maxSizeMb;
+    private final Double maxGrowthPercent;
+
+    public ArtifactSizeGate(Double maxSizeMb, Double maxGrowthPercent) {
+        this.maxSizeMb = maxSizeMb;
+        this.maxGrowthPercent = maxGrowthPercent;
+    }
+
+    /**
+     * Creates a gate from expanded step parameters.
+     * @return The gate, or null if neither limit is configured
+     * @throws IllegalArgumentException if a limit is not a valid non-negative number
+     */
+    public static ArtifactSizeGate fromParameters(String maxSizeMb, String maxGrowthPercent) {
+        Double size = parseLimit("Maximum size (MB)", maxSizeMb);
+        Double growth = parseLimit("Maximum size growth (%)", maxGrowthPercent);
+        if (size == null && growth == null) {
+            return null;
+        }
+        return new ArtifactSizeGate(size, growth);
+    }
+
+    private static Double parseLimit(String name, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            double parsed = Double.parseDouble(value.trim());
+            if (parsed < 0 || Double.isNaN(parsed) || Double.isInfinite(parsed)) {
+                throw new IllegalArgumentException(name + " must be a non-negative number: " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number: " + value, e);
+        }
+    }
+
+    /**
+     * Finds the most recent recorded upload for the same stream and platform.
+     * @return The baseline record, or null if there is no history to compare against
+     */
+    public static BuildstashTrendRecord findBaseline(List<BuildstashTrendRecord> history, String stream, String platform) {
+        for (int i = history.size() - 1; i >= 0; i--) {
+            BuildstashTrendRecord record = history.get(i);
+            if (equalsIgnoreCase(stream, record.getStream()) && equalsIgnoreCase(platform, record.getPlatform())) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    private static boolean equalsIgnoreCase(String a, String b) {
+        return a == null ? b == null : a.equalsIgnoreCase(b);
+    }
+
+    /**
+     * Checks a total artifact size against the configured limits.
+     * @param totalBytes Size of the primary and expansion files combined
+     * @param baseline Last successful upload for the same stream and platform, may be null
+     * @return A description of the exceeded limit, or null if the size is within budget
+     */
+    public String check(long totalBytes, BuildstashTrendRecord baseline) {
+        if (maxSizeMb != null && totalBytes > maxSizeMb * MEGABYTE) {
+            return String.format(Locale.ROOT, "Artifact size %.2f MB exceeds the limit of %.2f MB",
+                    totalBytes / MEGABYTE, maxSizeMb);
+        }
+
+        if (maxGrowthPercent != null && baseline != null && baseline.totalBytes() > 0) {
+            double growth = (totalBytes - baseline.totalBytes()) * 100.0 / baseline.totalBytes();
+            if (growth > maxGrowthPercent) {
+                return String.format(Locale.ROOT,
+                        "Artifact size %.2f MB grew %.1f%% over build #%d (%.2f MB), exceeding the limit of %.1f%%",
+                        totalBytes / MEGABYTE, growth, baseline.getBuildNumber(),
+                        baseline.totalBytes() / MEGABYTE, maxGrowthPercent);
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+package com.buildstash;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter.
+ * Delays grow by a fixed multiplier from an initial delay up to a cap, and each delay is
+ * randomly reduced by up to the jitter fraction so that many clients don't retry in lockstep.
+ */
+public class Backoff {
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final double multiplier;
+    private final double jitter;
+
+    /**
+     * @param initialDelayMillis Delay before the first retry
+     * @param maxDelayMillis Upper bound for any single delay
+     * @param multiplier Growth factor applied per attempt
+     * @param jitter Fraction (0-1) of each delay that is randomized
+     */
+    public Backoff(long initialDelayMillis, long maxDelayMillis, double multiplier, double jitter) {
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.multiplier = multiplier;
+        this.jitter = Math.max(0, Math.min(1, jitter));
+    }
+
+    /**
+     * Gets the delay to wait before the given attempt.
+     * @param attempt Zero-based attempt number
+     * @return Delay in milliseconds
+     */
+    public long delayMillis(int attempt) {
+        double base = initialDelayMillis * Math.pow(multiplier, Math.max(0, attempt));
+        long capped = (long) Math.min(maxDelayMillis, base);
+        if (jitter == 0 || capped == 0) {
+            return capped;
+        }
+        long randomized = (long) (capped * jitter * ThreadLocalRandom.current().nextDouble());
+        return capped - randomized;
+    }
+
+    public long getInitialDelayMillis() { return initialDelayMillis; }
+    public long getMaxDelayMillis() { return maxDelayMillis; }
+    public double getMultiplier() { return multiplier; }
+    public double getJitter() { return jitter; }
+}
@@ -0,0 +1,84 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * Pipeline step that waits for Buildstash to finish server-side processing of an uploaded build.
+ * Does not require a node, and does not hold a thread while waiting.
+ */
+public class BuildstashAwaitProcessingStep extends Step implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Secret apiKey;
+    private String buildId;
+    private int timeoutMinutes = BuildstashStep.DEFAULT_PROCESSING_TIMEOUT_MINUTES;
+
+    @DataBoundConstructor
+    public BuildstashAwaitProcessingStep() {
+        // Default constructor required for Jenkins
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new BuildstashAwaitProcessingStepExecution(this, context);
+    }
+
+    // Getters and Setters
+    public Secret getApiKey() { return apiKey; }
+
+    /**
+     * Setter that accepts String and converts to Secret.
+     * This is the primary setter used by Jenkins pipeline scripts and forms.
+     */
+    @DataBoundSetter
+    public void setApiKey(String apiKey) {
+        this.apiKey = Secret.fromString(apiKey);
+    }
+
+    /**
+     * Setter that accepts Secret directly (for programmatic use).
+     */
+    public void setApiKey(Secret apiKey) { this.apiKey = apiKey; }
+
+    public String getBuildId() { return buildId; }
+
+    @DataBoundSetter
+    public void setBuildId(String buildId) { this.buildId = buildId; }
+
+    public int getTimeoutMinutes() { return timeoutMinutes; }
+
+    @DataBoundSetter
+    public void setTimeoutMinutes(int timeoutMinutes) { this.timeoutMinutes = timeoutMinutes; }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "buildstashAwaitProcessing";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Wait for Buildstash processing";
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Set.of(TaskListener.class, Run.class);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.buildstash;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Execution class for the Buildstash await processing step.
+ * Polls the build status asynchronously, and resumes polling after a controller restart.
+ */
+public class BuildstashAwaitProcessingStepExecution extends StepExecution {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BuildstashAwaitProcessingStep step;
+
+    private transient volatile CompletableFuture<BuildstashUploadResponse> processingWait;
+
+    public BuildstashAwaitProcessingStepExecution(BuildstashAwaitProcessingStep step, StepContext context) {
+        super(context);
+        this.step = step;
+    }
+
+    @Override
+    public boolean start() throws Exception {
+        TaskListener listener = getContext().get(TaskListener.class);
+        Run<?, ?> run = getContext().get(Run.class);
+        EnvVars env = getContext().get(EnvVars.class);
+
+        Secret apiKeySecret = step.getApiKey();
+        String apiKeyPlain = apiKeySecret != null ? Secret.toString(apiKeySecret) : null;
+        String expandedApiKey = BuildstashUploadHelper.expand(env, apiKeyPlain);
+        String expandedBuildId = BuildstashUploadHelper.expand(env, step.getBuildId());
+
+        if (expandedApiKey == null || expandedApiKey.isBlank()) {
+            throw new IllegalArgumentException("API key is required");
+        }
+        if (expandedBuildId == null || expandedBuildId.isBlank()) {
+            throw new IllegalArgumentException("Build ID is required");
+        }
+
+        listener.getLogger().println("Waiting for Buildstash to finish processing build " + expandedBuildId + "...");
+        BuildstashUploadService uploadService = new BuildstashUploadService(expandedApiKey, listener);
+        CompletableFuture<BuildstashUploadResponse> wait = uploadService.awaitProcessing(
+                expandedBuildId, Duration.ofMinutes(step.getTimeoutMinutes()));
+        processingWait = wait;
+        wait.whenComplete((status, error) -> {
+            if (error != null) {
+                getContext().onFailure(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                return;
+            }
+            BuildstashUploadHelper.recordProcessingState(run, status, listener);
+            getContext().onSuccess(BuildstashUploadHelper.toResultMap(status));
+        });
+        return false;
+    }
+
+    @Override
+    public void stop(@NonNull Throwable cause) throws Exception {
+        CompletableFuture<BuildstashUploadResponse> currentWait = processingWait;
+        if (currentWait != null) {
+            currentWait.cancel(false);
+        }
+        super.stop(cause);
+    }
+
+    @Override
+    public void onResume() {
+        // Nothing is held on an agent, so polling can simply start over with a fresh timeout
+        try {
+            start();
+        } catch (Exception e) {
+            getContext().onFailure(e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * Pipeline step that waits for a background upload started with <code>buildstash(wait: false)</code>
+ * and returns the usual upload result. Does not require a node, and does not hold a thread while waiting.
+ */
+public class BuildstashAwaitStep extends Step implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String handle;
+
+    @DataBoundConstructor
+    public BuildstashAwaitStep(String handle) {
+        this.handle = handle;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new BuildstashAwaitStepExecution(this, context);
+    }
+
+    // Getters and Setters
+    public String getHandle() { return handle; }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "buildstashAwait";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Wait for a background Buildstash upload";
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Set.of(TaskListener.class, Run.class);
+        }
+    }
+}
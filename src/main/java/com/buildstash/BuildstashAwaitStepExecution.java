@@ -0,0 +1,58 @@
+package com.buildstash;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Execution class for the Buildstash await step.
+ * Completes from the background upload's callback.
+ */
+public class BuildstashAwaitStepExecution extends StepExecution {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BuildstashAwaitStep step;
+
+    public BuildstashAwaitStepExecution(BuildstashAwaitStep step, StepContext context) {
+        super(context);
+        this.step = step;
+    }
+
+    @Override
+    public boolean start() throws Exception {
+        TaskListener listener = getContext().get(TaskListener.class);
+        Run<?, ?> run = getContext().get(Run.class);
+
+        CompletableFuture<Map<String, Object>> result = BuildstashBackgroundUploads.get(run, step.getHandle());
+        if (!result.isDone()) {
+            listener.getLogger().println("Waiting for Buildstash upload " + step.getHandle() + "...");
+        }
+        result.whenComplete((map, error) -> {
+            if (error != null) {
+                getContext().onFailure(BuildstashStepExecution.unwrap(error));
+            } else {
+                getContext().onSuccess(map);
+            }
+        });
+        return false;
+    }
+
+    @Override
+    public void stop(@NonNull Throwable cause) throws Exception {
+        // Aborting the wait aborts the upload, as it could not be joined anymore
+        BuildstashBackgroundUploads.cancel(step.getHandle());
+        super.stop(cause);
+    }
+
+    @Override
+    public void onResume() {
+        getContext().onFailure(new AbortException("Background Buildstash uploads do not survive a controller restart"));
+    }
+}
@@ -0,0 +1,143 @@
+package com.buildstash;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.Util;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+import jenkins.util.VirtualFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of uploads started with <code>wait: false</code>, joined later by the <code>buildstashAwait</code> step.
+ * Handles are only valid within the run that started the upload. Uploads that are still running when
+ * their run completes are cancelled, as nothing can wait for them anymore.
+ * Background uploads are held in memory, so they don't survive a controller restart.
+ * Their files are copied to the controller before the step returns, since the workspace
+ * may be released, reused or go offline with its agent while the upload is still running.
+ */
+public final class BuildstashBackgroundUploads {
+
+    static final String DIR_NAME = "buildstash-background";
+
+    private static final Map<String, Entry> UPLOADS = new ConcurrentHashMap<>();
+
+    private BuildstashBackgroundUploads() {
+    }
+
+    /**
+     * Copies the files of a request to the controller, and changes the request to upload the copies.
+     * @return The directory holding the copies, to delete once the upload has finished
+     */
+    static File copyFiles(BuildstashUploadRequest request, TaskListener listener) throws IOException, InterruptedException {
+        File dir = new File(new File(Jenkins.get().getRootDir(), DIR_NAME), UUID.randomUUID().toString());
+        listener.getLogger().println("Copying files to the controller for the background upload...");
+        try {
+            Files.createDirectories(dir.toPath());
+            UploadFileSource source = request.getFileSource();
+            FileStat expansionFile = request.getExpansionFileStat();
+            String primaryFilePath = BuildstashOutbox.spool(source, request.getPrimaryFileStat(), new File(dir, "primary"));
+            String expansionFilePath = expansionFile != null && expansionFile.exists()
+                    ? BuildstashOutbox.spool(source, expansionFile, new File(dir, "expansion"))
+                    : request.getExpansionFilePath();
+            request.setFileSource(UploadFileSource.of(VirtualFile.forFile(dir)));
+            request.setPrimaryFilePath(primaryFilePath);
+            request.setExpansionFilePath(expansionFilePath);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            Util.deleteRecursive(dir);
+            throw e;
+        }
+        return dir;
+    }
+
+    /**
+     * Deletes copies left behind by background uploads that were running when the controller stopped.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void deleteLeftoverCopies() throws IOException, InterruptedException {
+        Util.deleteRecursive(new File(Jenkins.get().getRootDir(), DIR_NAME));
+    }
+
+    /**
+     * Registers a background upload.
+     * @param result Completed with the step's result map once the upload has finished
+     * @return The handle returned to the pipeline
+     */
+    static String register(Run<?, ?> run, BuildstashUploadService uploadService, CompletableFuture<Map<String, Object>> result) {
+        String handle = "buildstash-" + UUID.randomUUID();
+        UPLOADS.put(handle, new Entry(run.getExternalizableId(), uploadService, result));
+        return handle;
+    }
+
+    /**
+     * Gets the result of a background upload started by the given run.
+     * @throws AbortException if the handle is unknown or belongs to another run
+     */
+    static CompletableFuture<Map<String, Object>> get(Run<?, ?> run, String handle) throws AbortException {
+        Entry entry = handle != null ? UPLOADS.get(handle) : null;
+        if (entry == null || !entry.runId.equals(run.getExternalizableId())) {
+            throw new AbortException("Unknown Buildstash upload handle: " + handle
+                    + ". Pass the value returned by buildstash(wait: false) in the same build.");
+        }
+        return entry.result;
+    }
+
+    /**
+     * Cancels a background upload, aborting its in-flight transfers.
+     */
+    static void cancel(String handle) {
+        Entry entry = handle != null ? UPLOADS.get(handle) : null;
+        if (entry != null) {
+            entry.uploadService.cancel();
+            entry.result.cancel(false);
+        }
+    }
+
+    private static final class Entry {
+        private final String runId;
+        private final BuildstashUploadService uploadService;
+        private final CompletableFuture<Map<String, Object>> result;
+
+        private Entry(String runId, BuildstashUploadService uploadService, CompletableFuture<Map<String, Object>> result) {
+            this.runId = runId;
+            this.uploadService = uploadService;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Drops the handles of a completed run, cancelling uploads that were never awaited.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(Run<?, ?> run, TaskListener listener) {
+            String runId = run.getExternalizableId();
+            UPLOADS.entrySet().removeIf(e -> {
+                Entry entry = e.getValue();
+                if (!entry.runId.equals(runId)) {
+                    return false;
+                }
+                if (!entry.result.isDone()) {
+                    listener.getLogger().println("Cancelling Buildstash upload " + e.getKey()
+                            + ", which was started with wait: false but never awaited with buildstashAwait");
+                    entry.uploadService.cancel();
+                    entry.result.cancel(false);
+                }
+                return true;
+            });
+        }
+    }
+}
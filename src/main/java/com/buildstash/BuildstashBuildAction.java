@@ -1,32 +1,382 @@
 package com.buildstash;
 
-import hudson.model.Action;
+import hudson.Functions;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.verb.GET;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Build action to store Buildstash upload results.
  * This allows the upload results to be displayed on the build page.
- * Supports multiple uploads in a single pipeline run.
+ * Supports multiple uploads in a single pipeline run, including concurrent uploads from parallel branches.
+ * Results are appended to a side file in the run directory rather than saved in build.xml,
+ * so each upload writes one line instead of rewriting the whole run. The summary shown on the
+ * build page is derived from that file too, so it is current even if the run wasn't saved after an upload.
  */
-public class BuildstashBuildAction implements Action {
+public class BuildstashBuildAction implements RunAction2 {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildstashBuildAction.class.getName());
+
+    static final String FILE_NAME = "buildstash-uploads.jsonl";
+
+    /** Guards the get-or-create of the action on a run. Only held for the lookup and add. */
+    private static final Object ATTACH_LOCK = new Object();
 
-    private final List<BuildstashUploadResponse> responses;
+    /** Page size of the results page, and the upper bound for requests to the uploads endpoint. */
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 200;
 
-    public BuildstashBuildAction(BuildstashUploadResponse response) {
-        this.responses = new ArrayList<>();
-        if (response != null) {
-            this.responses.add(response);
+    /** Responses saved in build.xml by earlier versions; new results are only written to the side file. */
+    private List<BuildstashUploadResponse> responses;
+
+    private transient volatile List<BuildstashUploadResponse> uploads;
+    private transient volatile Run<?, ?> run;
+
+    BuildstashBuildAction() {
+    }
+
+    /**
+     * Gets the Buildstash action of a run, adding it if there is none yet.
+     * Safe to call from parallel branches: only one action is ever added to a run.
+     */
+    public static BuildstashBuildAction getOrCreate(Run<?, ?> run) {
+        synchronized (ATTACH_LOCK) {
+            BuildstashBuildAction action = run.getAction(BuildstashBuildAction.class);
+            if (action == null) {
+                action = new BuildstashBuildAction();
+                run.addAction(action);
+            }
+            return action;
         }
     }
 
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+
     /**
-     * Add a new upload response to the list.
+     * Add a new upload response, appending it to the run's upload file.
+     * The response is kept in memory even if writing the file fails.
      * @param response The upload response to add
+     * @throws IOException if the response could not be written to the run directory
+     */
+    public void addResponse(BuildstashUploadResponse response) throws IOException {
+        if (response == null) {
+            return;
+        }
+        List<BuildstashUploadResponse> current = uploads();
+        // Keep file order consistent with list order when branches upload concurrently
+        synchronized (this) {
+            current.add(response);
+            appendUpload(getFile(), response);
+        }
+    }
+
+    /**
+     * Update the processing state of uploads once server-side processing has finished.
+     * The updated response is appended to the upload file, and replaces the earlier line when read back.
+     * @param buildId The Buildstash build ID
+     * @param status The final build status reported by Buildstash
+     * @return true if a matching upload was found
+     * @throws IOException if the update could not be written to the run directory
+     */
+    public boolean updateProcessingState(String buildId, BuildstashUploadResponse status) throws IOException {
+        if (buildId == null) {
+            return false;
+        }
+        boolean updated = false;
+        synchronized (this) {
+            for (BuildstashUploadResponse response : uploads()) {
+                if (buildId.equals(response.getBuildId())) {
+                    response.setPendingProcessing(status.isPendingProcessing());
+                    if (status.getDownloadUrl() != null) {
+                        response.setDownloadUrl(status.getDownloadUrl());
+                    }
+                    if (status.getBuildInfoUrl() != null) {
+                        response.setBuildInfoUrl(status.getBuildInfoUrl());
+                    }
+                    appendUpload(getFile(), response);
+                    updated = true;
+                }
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Replaces the record of an upload queued in the outbox with the result of its delivery.
+     * The delivered response is appended to the upload file, and replaces the queued line when read back.
+     * @param outboxId The outbox entry ID
+     * @param delivered The upload response, or a record of the failed delivery
+     * @return true if the queued upload was found
+     * @throws IOException if the update could not be written to the run directory
+     */
+    public boolean completeQueued(String outboxId, BuildstashUploadResponse delivered) throws IOException {
+        if (outboxId == null) {
+            return false;
+        }
+        delivered.setOutboxId(outboxId);
+        List<BuildstashUploadResponse> current = uploads();
+        synchronized (this) {
+            int index = indexOf(current, delivered);
+            if (index < 0) {
+                return false;
+            }
+            current.set(index, delivered);
+            appendUpload(getFile(), delivered);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the run this action is attached to.
+     * @return The run, or null if not attached yet
+     */
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    private File getFile() {
+        Run<?, ?> r = run;
+        return r != null ? new File(r.getRootDir(), FILE_NAME) : null;
+    }
+
+    private List<BuildstashUploadResponse> uploads() {
+        List<BuildstashUploadResponse> current = uploads;
+        if (current == null) {
+            synchronized (this) {
+                current = uploads;
+                if (current == null) {
+                    current = new CopyOnWriteArrayList<>(readUploads(getFile(), responses));
+                    uploads = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Appends a response to an upload file as a single JSON line.
+     * @param file The upload file, or null if the action is not attached to a run yet
+     */
+    static void appendUpload(File file, BuildstashUploadResponse response) throws IOException {
+        if (file == null) {
+            return;
+        }
+        byte[] line = (BuildstashJson.WRITER.writeValueAsString(response) + "\n").getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Reads the responses of an upload file, after any legacy responses.
+     * A later line for the same build ID, or for the same outbox entry, replaces the earlier response. Unreadable lines,
+     * e.g. a line cut short by a crash, are skipped.
+     * @param file The upload file, may be null or missing
+     * @param legacy Responses saved in build.xml by earlier versions, may be null
+     */
+    static List<BuildstashUploadResponse> readUploads(File file, List<BuildstashUploadResponse> legacy) {
+        List<BuildstashUploadResponse> loaded = new ArrayList<>();
+        if (legacy != null) {
+            loaded.addAll(legacy);
+        }
+        if (file == null || !file.isFile()) {
+            return loaded;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                BuildstashUploadResponse response;
+                try {
+                    response = BuildstashJson.UPLOAD_RESPONSE.readValue(line);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Skipping unreadable Buildstash upload line in " + file, e);
+                    continue;
+                }
+                int existing = indexOf(loaded, response);
+                if (existing >= 0) {
+                    loaded.set(existing, response);
+                } else {
+                    loaded.add(response);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read Buildstash uploads from " + file, e);
+        }
+        return loaded;
+    }
+
+    private static int indexOf(List<BuildstashUploadResponse> responses, BuildstashUploadResponse response) {
+        String buildId = response.getBuildId();
+        String outboxId = response.getOutboxId();
+        for (int i = 0; i < responses.size(); i++) {
+            BuildstashUploadResponse candidate = responses.get(i);
+            if ((buildId != null && buildId.equals(candidate.getBuildId()))
+                    || (outboxId != null && outboxId.equals(candidate.getOutboxId()))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets a page of the responses matching the given filters, in upload order.
+     * @param platform Platform to match, or null or blank for any
+     * @param stream Stream to match, or null or blank for any
      */
-    public void addResponse(BuildstashUploadResponse response) {
-        if (response != null) {
-            this.responses.add(response);
+    Page getPage(int start, int limit, String platform, String stream) {
+        List<BuildstashUploadResponse> matching = new ArrayList<>();
+        for (BuildstashUploadResponse response : uploads()) {
+            if (matches(platform, response.getPlatformName()) && matches(stream, response.getStream())) {
+                matching.add(response);
+            }
+        }
+        int from = Math.min(Math.max(start, 0), matching.size());
+        int to = Math.min(from + Math.min(Math.max(limit, 1), MAX_PAGE_SIZE), matching.size());
+        return new Page(matching.size(), from, new ArrayList<>(matching.subList(from, to)));
+    }
+
+    private static boolean matches(String filter, String value) {
+        return filter == null || filter.isBlank() || filter.equals(value);
+    }
+
+    /**
+     * Serves a page of responses as JSON for the results page, which loads rows progressively.
+     * Query parameters: <code>start</code>, <code>limit</code> (at most {@value #MAX_PAGE_SIZE}), <code>platform</code> and <code>stream</code>.
+     */
+    @GET
+    public void doUploads(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException {
+        Page page = getPage(parseInt(req.getParameter("start"), 0), parseInt(req.getParameter("limit"), DEFAULT_PAGE_SIZE),
+                req.getParameter("platform"), req.getParameter("stream"));
+        List<Map<String, Object>> items = new ArrayList<>(page.items.size());
+        for (BuildstashUploadResponse response : page.items) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("buildId", response.getBuildId());
+            item.put("platform", response.getPlatformName());
+            item.put("stream", response.getStream());
+            item.put("buildInfoUrl", response.getBuildInfoUrl());
+            item.put("downloadUrl", response.getDownloadUrl());
+            item.put("pendingProcessing", response.isPendingProcessing());
+            item.put("queued", response.isQueued());
+            item.put("deliveryFailed", response.isDeliveryFailed());
+            item.put("message", response.getMessage());
+            item.put("totalBytes", response.getTotalBytes());
+            items.add(item);
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("total", page.total);
+        json.put("start", page.start);
+        json.put("items", items);
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        BuildstashJson.WRITER.writeValue(rsp.getWriter(), json);
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Gets the distinct platforms of all uploads, for the results page filter.
+     */
+    public SortedSet<String> getPlatforms() {
+        SortedSet<String> platforms = new TreeSet<>();
+        for (BuildstashUploadResponse response : uploads()) {
+            if (response.getPlatformName() != null) {
+                platforms.add(response.getPlatformName());
+            }
+        }
+        return platforms;
+    }
+
+    /**
+     * Gets the distinct streams of all uploads, for the results page filter.
+     */
+    public SortedSet<String> getStreams() {
+        SortedSet<String> streams = new TreeSet<>();
+        for (BuildstashUploadResponse response : uploads()) {
+            if (response.getStream() != null) {
+                streams.add(response.getStream());
+            }
+        }
+        return streams;
+    }
+
+    public int getUploadCount() { return uploads().size(); }
+
+    public long getTotalBytes() {
+        long total = 0;
+        for (BuildstashUploadResponse response : uploads()) {
+            total += response.getTotalBytes();
+        }
+        return total;
+    }
+
+    public int getPendingCount() {
+        int pending = 0;
+        for (BuildstashUploadResponse response : uploads()) {
+            if (response.isPendingProcessing()) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Gets the total uploaded size for display, e.g. "12.3 MB".
+     */
+    public String getTotalSize() {
+        return Functions.humanReadableByteSize(getTotalBytes());
+    }
+
+    public int getPageSize() { return DEFAULT_PAGE_SIZE; }
+
+    /**
+     * A page of responses matching a filter.
+     */
+    static final class Page {
+        final int total;
+        final int start;
+        final List<BuildstashUploadResponse> items;
+
+        Page(int total, int start, List<BuildstashUploadResponse> items) {
+            this.total = total;
+            this.start = start;
+            this.items = items;
         }
     }
 
@@ -37,7 +387,8 @@ public class BuildstashBuildAction implements Action {
 
     @Override
     public String getDisplayName() {
-        return "Buildstash Upload";
+        int count = getUploadCount();
+        return count > 1 ? "Buildstash Uploads (" + count + ")" : "Buildstash Upload";
     }
 
     @Override
@@ -47,10 +398,10 @@ public class BuildstashBuildAction implements Action {
 
     /**
      * Get all upload responses.
-     * @return List of all upload responses
+     * @return Read-only view of all upload responses
      */
     public List<BuildstashUploadResponse> getResponses() {
-        return responses;
+        return Collections.unmodifiableList(uploads());
     }
 
     /**
@@ -58,7 +409,8 @@ public class BuildstashBuildAction implements Action {
      * @return The first upload response, or null if none
      */
     public BuildstashUploadResponse getResponse() {
-        return responses.isEmpty() ? null : responses.get(0);
+        List<BuildstashUploadResponse> current = uploads();
+        return current.isEmpty() ? null : current.get(0);
     }
 
     /**
@@ -66,7 +418,7 @@ public class BuildstashBuildAction implements Action {
      * @return true if there are responses, false otherwise
      */
     public boolean hasResponses() {
-        return !responses.isEmpty();
+        return getUploadCount() > 0;
     }
 
     /**
@@ -74,6 +426,6 @@ public class BuildstashBuildAction implements Action {
      * @return true if any build has pending processing, false otherwise
      */
     public boolean hasAnyPendingProcessing() {
-        return responses.stream().anyMatch(BuildstashUploadResponse::isPendingProcessing);
+        return getPendingCount() > 0;
     }
-} 
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.buildstash;
 
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
@@ -7,9 +8,11 @@ import hudson.Launcher;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Recorder;
 import hudson.tasks.Publisher;
 import hudson.util.Secret;
+import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
 import hudson.util.ListBoxModel;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -45,77 +48,117 @@ public class BuildstashBuilder extends Recorder implements SimpleBuildStep {
     private String platform;
     private String stream;
     private String notes;
+    private String maxSizeMb;
+    private String maxSizeGrowthPercent;
+    private String sizeLimitResult = ArtifactSizeGate.DEFAULT_RESULT;
+    private BuildstashTimeouts timeouts;
+    private boolean uploadAfterBuild;
+    private boolean queueWhenUnavailable;
 
     @DataBoundConstructor
     public BuildstashBuilder() {
         // Default constructor required for Jenkins
     }
 
+    /**
+     * Uploads don't depend on the previous build's results, so concurrent builds of the job
+     * can upload in parallel instead of waiting for the previous build to finish its publishers.
+     */
+    @Override
+    public BuildStepMonitor getRequiredMonitorService() {
+        return BuildStepMonitor.NONE;
+    }
+
     @Override
     public void perform(Run<?, ?> build, FilePath workspace, EnvVars env, Launcher launcher, TaskListener listener) throws InterruptedException, IOException {
         try {
+            // Snapshot the environment, URLs and actions once for request creation and detection
+            UploadContext context = UploadContext.of(build, listener, env);
+
             // Expand environment variables in all fields
             String apiKeyPlain = apiKey != null ? Secret.toString(apiKey) : null;
-            String expandedApiKey = BuildstashUploadHelper.expand(env, apiKeyPlain);
-            String expandedStructure = BuildstashUploadHelper.expand(env, structure);
+            String expandedApiKey = context.expand(apiKeyPlain);
+            String expandedStructure = context.expand(structure);
             // Ensure structure defaults to "file" if not set
             if (expandedStructure == null || expandedStructure.isBlank()) {
                 expandedStructure = "file";
             }
-            String expandedPrimaryFilePath = BuildstashUploadHelper.expand(env, primaryFilePath);
-            String expandedExpansionFilePath = BuildstashUploadHelper.expand(env, expansionFilePath);
-            String expandedVersionComponent1Major = BuildstashUploadHelper.expand(env, versionComponent1Major);
-            String expandedVersionComponent2Minor = BuildstashUploadHelper.expand(env, versionComponent2Minor);
-            String expandedVersionComponent3Patch = BuildstashUploadHelper.expand(env, versionComponent3Patch);
-            String expandedVersionComponentExtra = BuildstashUploadHelper.expand(env, versionComponentExtra);
-            String expandedVersionComponentMeta = BuildstashUploadHelper.expand(env, versionComponentMeta);
-            String expandedCustomBuildNumber = BuildstashUploadHelper.expand(env, customBuildNumber);
-            String expandedLabels = BuildstashUploadHelper.expand(env, labels);
-            String expandedArchitectures = BuildstashUploadHelper.expand(env, architectures);
-            String expandedPlatform = BuildstashUploadHelper.expand(env, platform);
-            String expandedStream = BuildstashUploadHelper.expand(env, stream);
-            String expandedNotes = BuildstashUploadHelper.expand(env, notes);
-            String expandedVcHostType = BuildstashUploadHelper.expand(env, vcHostType);
-            String expandedVcHost = BuildstashUploadHelper.expand(env, vcHost);
-            String expandedVcRepoName = BuildstashUploadHelper.expand(env, vcRepoName);
-            String expandedVcRepoUrl = BuildstashUploadHelper.expand(env, vcRepoUrl);
-            String expandedVcBranch = BuildstashUploadHelper.expand(env, vcBranch);
-            String expandedVcCommitSha = BuildstashUploadHelper.expand(env, vcCommitSha);
-            String expandedVcCommitUrl = BuildstashUploadHelper.expand(env, vcCommitUrl);
+            String expandedPrimaryFilePath = context.expand(primaryFilePath);
+            String expandedExpansionFilePath = context.expand(expansionFilePath);
+            String expandedVersionComponent1Major = context.expand(versionComponent1Major);
+            String expandedVersionComponent2Minor = context.expand(versionComponent2Minor);
+            String expandedVersionComponent3Patch = context.expand(versionComponent3Patch);
+            String expandedVersionComponentExtra = context.expand(versionComponentExtra);
+            String expandedVersionComponentMeta = context.expand(versionComponentMeta);
+            String expandedCustomBuildNumber = context.expand(customBuildNumber);
+            String expandedLabels = context.expand(labels);
+            String expandedArchitectures = context.expand(architectures);
+            String expandedPlatform = context.expand(platform);
+            String expandedStream = context.expand(stream);
+            String expandedNotes = context.expand(notes);
+            String expandedVcHostType = context.expand(vcHostType);
+            String expandedVcHost = context.expand(vcHost);
+            String expandedVcRepoName = context.expand(vcRepoName);
+            String expandedVcRepoUrl = context.expand(vcRepoUrl);
+            String expandedVcBranch = context.expand(vcBranch);
+            String expandedVcCommitSha = context.expand(vcCommitSha);
+            String expandedVcCommitUrl = context.expand(vcCommitUrl);
+            String expandedMaxSizeMb = context.expand(maxSizeMb);
+            String expandedMaxSizeGrowthPercent = context.expand(maxSizeGrowthPercent);
             
             // Validate required parameters with expanded values
             BuildstashUploadHelper.validateParameters(expandedApiKey, expandedPrimaryFilePath, expandedVersionComponent1Major,
                     expandedVersionComponent2Minor, expandedVersionComponent3Patch, expandedPlatform, expandedStream);
 
             // Create upload service
-            BuildstashUploadService uploadService = new BuildstashUploadService(expandedApiKey, listener);
+            BuildstashUploadService uploadService = new BuildstashUploadService(expandedApiKey, listener, timeouts);
 
             // Prepare upload request with expanded values
-            BuildstashUploadRequest request = BuildstashUploadHelper.createUploadRequest(workspace, build, expandedStructure,
+            BuildstashUploadRequest request = BuildstashUploadHelper.createUploadRequest(workspace, context, expandedStructure,
                     expandedPrimaryFilePath, expandedExpansionFilePath, expandedVersionComponent1Major,
                     expandedVersionComponent2Minor, expandedVersionComponent3Patch, expandedVersionComponentExtra,
                     expandedVersionComponentMeta, expandedCustomBuildNumber, expandedLabels, expandedArchitectures,
                     expandedPlatform, expandedStream, expandedNotes, expandedVcHostType, expandedVcHost,
                     expandedVcRepoName, expandedVcRepoUrl, expandedVcBranch, expandedVcCommitSha, expandedVcCommitUrl);
+            if (uploadAfterBuild) {
+                // Read the files from the archived artifacts, which outlive the workspace lease
+                request.setFileSource(UploadFileSource.of(build.getArtifactManager().root()));
+            }
             
-            // Auto-detect SCM info (from project SCM config for freestyle, or BuildData for pipelines)
-            VersionControlDetector.populateVersionControlInfo(build, request, listener);
+            // Auto-detect SCM info (from project SCM config for freestyle, or BuildData for pipelines) and stat
+            // the files on the agent concurrently, while the API connection warms up
+            BuildstashUploadHelper.prepareRequest(context, request, uploadService);
+
+            // Enforce artifact size budgets before any bytes are uploaded
+            BuildstashUploadHelper.enforceSizeLimits(build, request, expandedMaxSizeMb, expandedMaxSizeGrowthPercent,
+                    sizeLimitResult, listener);
+
+            if (uploadAfterBuild) {
+                if (request.getPrimaryFileStat() == null || !request.getPrimaryFileStat().exists()) {
+                    throw new AbortException(expandedPrimaryFilePath + " was not found in the archived artifacts. "
+                            + "Archive it before the Buildstash upload, or turn off uploading after the build.");
+                }
+                // Record the intent; the upload starts once the build has completed and released its executor
+                build.addAction(new BuildstashDeferredUpload(request, expandedApiKey, timeouts,
+                        queueWhenUnavailable, Jenkins.getAuthentication2()));
+                listener.getLogger().println("Buildstash upload will start from the archived artifacts after the build completes");
+                return;
+            }
 
-            // Execute upload
-            BuildstashUploadResponse response = uploadService.upload(request);
+            // Execute upload, or queue it in the outbox if Buildstash is unreachable and queueing is enabled
+            BuildstashUploadResponse response = BuildstashUploadHelper.uploadOrQueue(build, request, uploadService,
+                    expandedApiKey, timeouts, queueWhenUnavailable, listener);
 
             // Log results
             BuildstashUploadHelper.logResults(listener, response);
 
-            // Store results as build actions for later access
-            // Check if there's already a BuildstashBuildAction and add to it, otherwise create a new one
-            BuildstashBuildAction existingAction = build.getAction(BuildstashBuildAction.class);
-            if (existingAction != null) {
-                existingAction.addResponse(response);
-            } else {
-                build.addAction(new BuildstashBuildAction(response));
-            }
+            // Store results as build actions for later access (for UI display) and record metrics for trends
+            BuildstashUploadHelper.recordResults(build, request, response, listener);
 
+        } catch (InterruptedException e) {
+            // Build was aborted; in-flight transfers and the pending upload have already been cancelled
+            listener.error("Buildstash upload aborted");
+            throw e;
         } catch (Exception e) {
             listener.error("Buildstash upload failed: " + e.getMessage());
             e.printStackTrace(listener.getLogger());
@@ -248,6 +291,44 @@ public class BuildstashBuilder extends Recorder implements SimpleBuildStep {
     @DataBoundSetter
     public void setNotes(String notes) { this.notes = notes; }
 
+    public String getMaxSizeMb() { return maxSizeMb; }
+
+    @DataBoundSetter
+    public void setMaxSizeMb(String maxSizeMb) { this.maxSizeMb = maxSizeMb; }
+
+    public String getMaxSizeGrowthPercent() { return maxSizeGrowthPercent; }
+
+    @DataBoundSetter
+    public void setMaxSizeGrowthPercent(String maxSizeGrowthPercent) { this.maxSizeGrowthPercent = maxSizeGrowthPercent; }
+
+    public String getSizeLimitResult() { return sizeLimitResult; }
+
+    @DataBoundSetter
+    public void setSizeLimitResult(String sizeLimitResult) { this.sizeLimitResult = sizeLimitResult; }
+
+    public BuildstashTimeouts getTimeouts() { return timeouts; }
+
+    @DataBoundSetter
+    public void setTimeouts(BuildstashTimeouts timeouts) { this.timeouts = timeouts; }
+
+    public boolean isQueueWhenUnavailable() { return queueWhenUnavailable; }
+
+    /**
+     * When true, an upload that finds Buildstash unreachable is queued in the outbox and
+     * delivered later, instead of failing the build.
+     */
+    @DataBoundSetter
+    public void setQueueWhenUnavailable(boolean queueWhenUnavailable) { this.queueWhenUnavailable = queueWhenUnavailable; }
+
+    public boolean isUploadAfterBuild() { return uploadAfterBuild; }
+
+    /**
+     * When true, only the upload intent is recorded during the build, and the files are uploaded
+     * from the run's archived artifacts after the build completes, without holding the executor.
+     */
+    @DataBoundSetter
+    public void setUploadAfterBuild(boolean uploadAfterBuild) { this.uploadAfterBuild = uploadAfterBuild; }
+
     @Extension
     public static class DescriptorImpl extends BuildStepDescriptor<Publisher> {
 
@@ -267,5 +348,12 @@ public class BuildstashBuilder extends Recorder implements SimpleBuildStep {
             items.add("File + Expansion", "file+expansion");
             return items;
         }
+
+        public ListBoxModel doFillSizeLimitResultItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add("Fail the build", "FAILURE");
+            items.add("Mark the build unstable", "UNSTABLE");
+            return items;
+        }
     }
 } 
\ No newline at end of file
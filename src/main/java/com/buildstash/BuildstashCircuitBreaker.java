@@ -0,0 +1,152 @@
+package com.buildstash;
+
+import jenkins.util.SystemProperties;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller-wide circuit breaker for Buildstash API calls.
+ * After a number of consecutive failures (connection errors, timeouts or 5xx responses) the breaker
+ * opens, and API calls fail fast with {@link CircuitOpenException} instead of each build waiting
+ * for its own timeouts. Once the open period has passed, a single probe call is let through
+ * (half-open): its success closes the breaker, its failure opens it again.
+ * Storage transfers to presigned URLs are not guarded, as they don't go to the Buildstash API.
+ */
+public final class BuildstashCircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildstashCircuitBreaker.class.getName());
+
+    private static final BuildstashCircuitBreaker INSTANCE = new BuildstashCircuitBreaker(
+            SystemProperties.getInteger(BuildstashCircuitBreaker.class.getName() + ".failureThreshold", 5),
+            Duration.ofSeconds(SystemProperties.getLong(BuildstashCircuitBreaker.class.getName() + ".openSeconds", 60L)),
+            System::nanoTime);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final LongSupplier nanoClock;
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private long openedAtMillis;
+    private boolean probeInFlight;
+    private String lastFailure;
+
+    /**
+     * @param failureThreshold Consecutive failures that open the breaker
+     * @param openDuration How long the breaker stays open before a probe call is let through
+     * @param nanoClock Source of {@link System#nanoTime()}-like timestamps
+     */
+    BuildstashCircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier nanoClock) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDuration = openDuration;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Gets the breaker shared by all uploads on this controller.
+     */
+    public static BuildstashCircuitBreaker get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Called before an API call. Every call that is let through must end with
+     * {@link #onSuccess()}, {@link #onFailure(String)} or {@link #release()}.
+     * @throws CircuitOpenException if the breaker is open, or a probe call is already in flight
+     */
+    synchronized void acquire() throws CircuitOpenException {
+        switch (state) {
+            case CLOSED:
+                return;
+            case OPEN:
+                if (!openPeriodElapsed()) {
+                    throw openException();
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                LOGGER.info("Buildstash API circuit breaker is half-open, probing with the next call");
+                return;
+            case HALF_OPEN:
+            default:
+                if (probeInFlight) {
+                    throw openException();
+                }
+                probeInFlight = true;
+        }
+    }
+
+    /**
+     * Records a call that reached the API, including calls answered with a client error.
+     */
+    synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            LOGGER.info("Buildstash API circuit breaker closed, the API is reachable again");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    /**
+     * Records a call that failed because the API was unreachable or reported a server error.
+     */
+    synchronized void onFailure(String description) {
+        consecutiveFailures++;
+        lastFailure = description;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAtNanos = nanoClock.getAsLong();
+            openedAtMillis = System.currentTimeMillis();
+            LOGGER.log(Level.WARNING, "Buildstash API circuit breaker opened after {0} consecutive failures, last: {1}. "
+                    + "API calls fail fast for {2}s", new Object[] {consecutiveFailures, description, openDuration.toSeconds()});
+        }
+    }
+
+    /**
+     * Records a call that ended without telling anything about the API, e.g. because it was cancelled.
+     */
+    synchronized void release() {
+        probeInFlight = false;
+    }
+
+    /**
+     * Whether an API call would currently be let through.
+     */
+    public synchronized boolean allowsRequests() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return openPeriodElapsed();
+            case HALF_OPEN:
+            default:
+                return !probeInFlight;
+        }
+    }
+
+    private boolean openPeriodElapsed() {
+        return nanoClock.getAsLong() - openedAtNanos >= openDuration.toNanos();
+    }
+
+    private CircuitOpenException openException() {
+        return new CircuitOpenException("Buildstash API circuit breaker is open after " + consecutiveFailures
+                + " consecutive failures (last: " + lastFailure + "), not calling the API until a probe call succeeds");
+    }
+
+    // Getters for the administrative monitor
+    public synchronized State getState() { return state; }
+    public synchronized int getConsecutiveFailures() { return consecutiveFailures; }
+    public synchronized String getLastFailure() { return lastFailure; }
+    public synchronized Date getOpenedAt() { return state != State.CLOSED ? new Date(openedAtMillis) : null; }
+    public int getFailureThreshold() { return failureThreshold; }
+    public Duration getOpenDuration() { return openDuration; }
+}
@@ -0,0 +1,26 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.model.AdministrativeMonitor;
+
+/**
+ * Tells administrators when the Buildstash API circuit breaker is open, so failing or queued
+ * uploads are explained without reading build logs.
+ */
+@Extension
+public class BuildstashCircuitBreakerMonitor extends AdministrativeMonitor {
+
+    @Override
+    public String getDisplayName() {
+        return "Buildstash API circuit breaker";
+    }
+
+    @Override
+    public boolean isActivated() {
+        return getBreaker().getState() != BuildstashCircuitBreaker.State.CLOSED;
+    }
+
+    public BuildstashCircuitBreaker getBreaker() {
+        return BuildstashCircuitBreaker.get();
+    }
+}
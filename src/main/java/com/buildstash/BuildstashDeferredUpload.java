@@ -0,0 +1,108 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.model.InvisibleAction;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.Secret;
+import hudson.util.StreamTaskListener;
+import org.springframework.security.core.Authentication;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Upload intent recorded by the Buildstash post-build action when it uploads after the build.
+ * Once the run has completed, the upload runs on the upload pool from the run's archived artifacts,
+ * so neither the executor nor the workspace is held while bytes are transferred.
+ * Results are recorded on the run as usual, and the upload log is written to
+ * {@value #LOG_FILE_NAME} in the build directory, as the build log is closed by then.
+ * Intents are held in memory and removed when the upload starts, so they are never saved with the run.
+ */
+public class BuildstashDeferredUpload extends InvisibleAction {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildstashDeferredUpload.class.getName());
+
+    static final String LOG_FILE_NAME = "buildstash-upload.log";
+
+    private final transient BuildstashUploadRequest request;
+    private final transient Secret apiKey;
+    private final transient BuildstashTimeouts timeouts;
+    private final transient boolean queueWhenUnavailable;
+    private final transient Authentication auth;
+
+    /**
+     * @param request A prepared request reading from the archived artifacts
+     * @param apiKey The expanded API key
+     * @param queueWhenUnavailable Whether to queue the upload in the outbox if Buildstash is unreachable
+     * @param auth The authentication the upload runs as
+     */
+    BuildstashDeferredUpload(BuildstashUploadRequest request, String apiKey, BuildstashTimeouts timeouts,
+                             boolean queueWhenUnavailable, Authentication auth) {
+        this.request = request;
+        this.apiKey = Secret.fromString(apiKey);
+        this.timeouts = timeouts;
+        this.queueWhenUnavailable = queueWhenUnavailable;
+        this.auth = auth;
+    }
+
+    private void upload(Run<?, ?> run) {
+        File logFile = new File(run.getRootDir(), LOG_FILE_NAME);
+        try (ACLContext ignored = ACL.as2(auth);
+             StreamTaskListener listener = new StreamTaskListener(new FileOutputStream(logFile, true), StandardCharsets.UTF_8)) {
+            try {
+                BuildstashUploadService uploadService = new BuildstashUploadService(Secret.toString(apiKey), listener, timeouts);
+                BuildstashUploadResponse response = BuildstashUploadHelper.uploadOrQueue(run, request, uploadService,
+                        Secret.toString(apiKey), timeouts, queueWhenUnavailable, listener);
+                BuildstashUploadHelper.logResults(listener, response);
+                BuildstashUploadHelper.recordResults(run, request, response, listener);
+                // The run was saved when it completed, before the results action may have been added
+                run.save();
+            } catch (InterruptedException e) {
+                listener.error("Buildstash upload aborted");
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                listener.error("Buildstash upload failed: " + e.getMessage());
+                e.printStackTrace(listener.getLogger());
+                LOGGER.log(Level.WARNING, "Buildstash upload after " + run + " failed", e);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write the Buildstash upload log of " + run, e);
+        }
+    }
+
+    /**
+     * Starts the recorded uploads of a run once it has completed, unless it failed or was aborted.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(Run<?, ?> run, TaskListener listener) {
+            for (BuildstashDeferredUpload intent : run.getActions(BuildstashDeferredUpload.class)) {
+                run.removeAction(intent);
+                if (intent.request == null) {
+                    // Loaded from a run saved while the build was running; the intent didn't survive a restart
+                    continue;
+                }
+                Result result = run.getResult();
+                if (result != null && result.isWorseThan(Result.UNSTABLE)) {
+                    listener.getLogger().println("Skipping Buildstash upload of " + intent.request.getPrimaryFilePath()
+                            + " because the build result is " + result);
+                    continue;
+                }
+                listener.getLogger().println("Uploading " + intent.request.getPrimaryFilePath()
+                        + " to Buildstash in the background, see " + LOG_FILE_NAME + " in the build directory");
+                BuildstashExecutors.uploads().submit(() -> intent.upload(run));
+            }
+        }
+    }
+}
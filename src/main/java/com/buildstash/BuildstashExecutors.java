@@ -0,0 +1,28 @@
+package com.buildstash;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared thread pools for Buildstash uploads.
+ * Uploads run here rather than on the CPS VM thread or a build executor.
+ */
+public final class BuildstashExecutors {
+
+    private static final ExecutorService UPLOADS = Executors.newCachedThreadPool(
+            new NamingThreadFactory(new DaemonThreadFactory(), "Buildstash upload"));
+
+    private BuildstashExecutors() {
+    }
+
+    /**
+     * Gets the pool used to run uploads.
+     * @return Shared executor service
+     */
+    public static ExecutorService uploads() {
+        return UPLOADS;
+    }
+}
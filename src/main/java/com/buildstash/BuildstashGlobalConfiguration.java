@@ -0,0 +1,86 @@
+package com.buildstash;
+
+import hudson.Extension;
+import jenkins.model.GlobalConfiguration;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Global configuration for the Buildstash plugin.
+ * Holds controller-wide defaults that individual steps can override.
+ */
+@Extension
+@Symbol("buildstash")
+public class BuildstashGlobalConfiguration extends GlobalConfiguration {
+
+    private BuildstashTimeouts timeouts;
+    private List<VcHostRule> hostRules;
+    private transient volatile VcHostRules compiledHostRules;
+
+    public BuildstashGlobalConfiguration() {
+        load();
+    }
+
+    /**
+     * Gets the global configuration instance.
+     * @return The configuration, or null when Jenkins is not running
+     */
+    public static BuildstashGlobalConfiguration get() {
+        return GlobalConfiguration.all().get(BuildstashGlobalConfiguration.class);
+    }
+
+    /**
+     * Resolves the timeouts to use for an upload.
+     * @param override Per-step timeouts, may be null
+     * @return Step timeouts with unset values taken from the global configuration
+     */
+    public static BuildstashTimeouts resolveTimeouts(BuildstashTimeouts override) {
+        BuildstashGlobalConfiguration config = get();
+        BuildstashTimeouts global = config != null ? config.getTimeouts() : null;
+        if (override == null) {
+            return global != null ? global : new BuildstashTimeouts();
+        }
+        return override.withFallback(global);
+    }
+
+    /**
+     * Gets the admin-defined repository host rules, compiled for lookup.
+     * @return The compiled rules, or null when Jenkins is not running
+     */
+    static VcHostRules hostRules() {
+        BuildstashGlobalConfiguration config = get();
+        if (config == null) {
+            return null;
+        }
+        VcHostRules compiled = config.compiledHostRules;
+        if (compiled == null) {
+            compiled = VcHostRules.compile(config.hostRules);
+            config.compiledHostRules = compiled;
+        }
+        return compiled;
+    }
+
+    public BuildstashTimeouts getTimeouts() { return timeouts; }
+
+    @DataBoundSetter
+    public void setTimeouts(BuildstashTimeouts timeouts) {
+        this.timeouts = timeouts;
+        save();
+    }
+
+    public List<VcHostRule> getHostRules() {
+        return hostRules != null ? hostRules : Collections.emptyList();
+    }
+
+    @DataBoundSetter
+    public void setHostRules(List<VcHostRule> hostRules) {
+        this.hostRules = hostRules != null ? new ArrayList<>(hostRules) : null;
+        this.compiledHostRules = null;
+        RepositoryIdentity.clearCache();
+        save();
+    }
+}
@@ -0,0 +1,23 @@
+package com.buildstash;
+
+import java.io.IOException;
+
+/**
+ * Thrown when Buildstash or the storage service answers a call with an unexpected HTTP status.
+ * Records the status so that {@link RetryPolicy} can tell transient errors from permanent ones.
+ */
+public class BuildstashHttpException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public BuildstashHttpException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
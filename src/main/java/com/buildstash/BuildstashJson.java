@@ -0,0 +1,89 @@
+package com.buildstash;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Shared JSON codec for Buildstash API calls and the plugin's own JSON files.
+ * Readers and writers are thread-safe and created once, so calls don't pay for a new
+ * mapper or for looking up (de)serializers again. Request bodies are written with a
+ * {@link JsonGenerator} into a byte array, skipping the intermediate Map and String, and
+ * responses are parsed from the stream rather than a String.
+ */
+final class BuildstashJson {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    static final ObjectWriter WRITER = MAPPER.writer();
+
+    static final ObjectReader UPLOAD_REQUEST_RESPONSE = MAPPER.readerFor(UploadRequestResponse.class);
+    static final ObjectReader PRESIGNED_URL_RESPONSE = MAPPER.readerFor(PresignedUrlResponse.class);
+    static final ObjectReader UPLOAD_RESPONSE = MAPPER.readerFor(BuildstashUploadResponse.class);
+    static final ObjectReader TREND_RECORD = MAPPER.readerFor(BuildstashTrendRecord.class);
+    static final ObjectReader MAP = MAPPER.readerFor(Map.class);
+
+    /**
+     * Discards the body of successful responses, e.g. storage PUTs whose body is never used,
+     * and keeps the body of error responses as text for the error message.
+     */
+    static final BodyHandler<String> ERROR_BODY_ONLY = responseInfo -> responseInfo.statusCode() / 100 == 2
+            ? BodySubscribers.replacing(null)
+            : BodySubscribers.ofString(StandardCharsets.UTF_8);
+
+    private BuildstashJson() {
+    }
+
+    /**
+     * Writes the fields of a JSON object.
+     */
+    @FunctionalInterface
+    interface ObjectBody {
+        void writeFields(JsonGenerator generator) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Serializes a JSON object with a streaming generator.
+     */
+    static byte[] toBytes(ObjectBody body) throws IOException, InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            body.writeFields(generator);
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates a request body publisher for a JSON object written with a streaming generator.
+     * The payload is buffered rather than streamed: API payloads are small, writing them may
+     * need to resolve file metadata first, and a buffered body can be sent again on a retry.
+     */
+    static BodyPublisher publisher(ObjectBody body) throws IOException, InterruptedException {
+        return BodyPublishers.ofByteArray(toBytes(body));
+    }
+
+    /**
+     * Reads a response body as text, e.g. for an error message.
+     */
+    static String readText(InputStream body) throws IOException {
+        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,194 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+import hudson.util.AtomicFileWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only history of upload summaries for a single job.
+ * Records are stored one JSON object per line in the job directory, and read back
+ * incrementally so that rendering trends only parses lines appended since the last read.
+ */
+public class BuildstashMetricsStore {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildstashMetricsStore.class.getName());
+
+    static final String FILE_NAME = "buildstash-metrics.jsonl";
+
+    /** Number of records kept when the history file is compacted. */
+    static final int MAX_RECORDS = 1000;
+
+    /** Stores by job full name, evicted when the job is deleted or renamed. */
+    private static final Map<String, BuildstashMetricsStore> STORES = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final List<BuildstashTrendRecord> records = new ArrayList<>();
+    private long readOffset;
+
+    BuildstashMetricsStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the metrics store for a job, creating it on first use.
+     * Only needed to record an upload; readers should use {@link #ifExists(Job)}.
+     */
+    public static BuildstashMetricsStore forJob(Job<?, ?> job) {
+        File file = new File(job.getRootDir(), FILE_NAME);
+        return STORES.compute(job.getFullName(),
+                (name, store) -> store != null && store.file.equals(file) ? store : new BuildstashMetricsStore(file));
+    }
+
+    /**
+     * Gets the metrics store for a job that has recorded uploads.
+     * Jobs without upload history don't get a store.
+     * @return The store, or null if the job has no history file
+     */
+    public static BuildstashMetricsStore ifExists(Job<?, ?> job) {
+        if (!new File(job.getRootDir(), FILE_NAME).isFile()) {
+            return null;
+        }
+        return forJob(job);
+    }
+
+    /**
+     * Get all recorded upload summaries of a job, oldest first.
+     * @return The recorded history, empty if the job has none
+     */
+    public static List<BuildstashTrendRecord> recordsOf(Job<?, ?> job) {
+        BuildstashMetricsStore store = ifExists(job);
+        return store != null ? store.getRecords() : Collections.emptyList();
+    }
+
+    /**
+     * Drops the cached stores of an item and, for folders, of the jobs inside it.
+     */
+    static void evict(String fullName) {
+        STORES.keySet().removeIf(name -> name.equals(fullName) || name.startsWith(fullName + "/"));
+    }
+
+    static boolean isCached(String fullName) {
+        return STORES.containsKey(fullName);
+    }
+
+    /**
+     * Appends a record to the history, compacting the file if it has grown too large.
+     */
+    public synchronized void append(BuildstashTrendRecord record) throws IOException {
+        refresh();
+        byte[] line = (BuildstashJson.WRITER.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        refresh();
+
+        if (records.size() > MAX_RECORDS * 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Get all recorded upload summaries, oldest first.
+     * Only lines appended since the previous call are parsed.
+     * @return Snapshot of the recorded history
+     */
+    public synchronized List<BuildstashTrendRecord> getRecords() {
+        try {
+            refresh();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read Buildstash metrics from " + file, e);
+        }
+        return Collections.unmodifiableList(new ArrayList<>(records));
+    }
+
+    private void refresh() throws IOException {
+        long length = file.length();
+        if (length < readOffset) {
+            // File was rewritten behind our back; start over
+            records.clear();
+            readOffset = 0;
+        }
+        if (length == readOffset) {
+            return;
+        }
+
+        byte[] appended;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            in.skipNBytes(readOffset);
+            appended = in.readNBytes((int) Math.min(Integer.MAX_VALUE, length - readOffset));
+        }
+
+        // Only consume complete lines, a partially written line is picked up on the next read
+        int end = appended.length;
+        while (end > 0 && appended[end - 1] != '\n') {
+            end--;
+        }
+        if (end == 0) {
+            return;
+        }
+
+        int lineStart = 0;
+        for (int i = 0; i < end; i++) {
+            if (appended[i] == '\n') {
+                if (i > lineStart) {
+                    String line = new String(appended, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                    try {
+                        records.add(BuildstashJson.TREND_RECORD.readValue(line));
+                    } catch (IOException e) {
+                        LOGGER.log(Level.FINE, "Skipping unreadable Buildstash metrics line in " + file, e);
+                    }
+                }
+                lineStart = i + 1;
+            }
+        }
+        readOffset += end;
+    }
+
+    private void compact() throws IOException {
+        List<BuildstashTrendRecord> retained = new ArrayList<>(records.subList(records.size() - MAX_RECORDS, records.size()));
+        AtomicFileWriter writer = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+        try {
+            for (BuildstashTrendRecord record : retained) {
+                writer.write(BuildstashJson.WRITER.writeValueAsString(record));
+                writer.write("\n");
+            }
+            writer.commit();
+        } finally {
+            writer.abort();
+        }
+        records.clear();
+        records.addAll(retained);
+        readOffset = file.length();
+    }
+
+    /**
+     * Evicts stores of deleted and renamed jobs, whose history file has gone or moved.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            evict(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            evict(oldFullName);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.PeriodicWork;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.Secret;
+import hudson.util.StreamTaskListener;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.VirtualFile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Durable queue of uploads that could not start because Buildstash was unreachable.
+ * Each entry is a directory under {@code $JENKINS_HOME/buildstash-outbox} holding copies of the
+ * files and the serialized request, so the upload no longer depends on the workspace or the agent.
+ * {@link Drainer} delivers queued uploads with bounded concurrency once the API responds again,
+ * and the queued record on the run is replaced with the result of the delivery.
+ */
+public final class BuildstashOutbox {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildstashOutbox.class.getName());
+
+    static final String DIR_NAME = "buildstash-outbox";
+    private static final String ENTRY_FILE_NAME = "entry.xml";
+    private static final String DELIVERY_LOG_FILE_NAME = "delivery.log";
+
+    /** Maximum number of queued uploads delivered at the same time. */
+    static final int MAX_CONCURRENT_DELIVERIES = SystemProperties.getInteger(
+            BuildstashOutbox.class.getName() + ".maxConcurrentDeliveries", 2);
+
+    /** Delay before retrying an entry whose delivery found Buildstash still unreachable. */
+    private static final Backoff RETRY_BACKOFF = new Backoff(60_000, 3_600_000, 2.0, 0.2);
+
+    private static final Set<String> DELIVERING = ConcurrentHashMap.newKeySet();
+
+    /** Deliveries are not attempted before this time after Buildstash was last found unreachable. */
+    private static volatile long unavailableUntilMillis;
+
+    private BuildstashOutbox() {
+    }
+
+    /**
+     * Persisted state of an outbox entry.
+     */
+    static final class Entry {
+        private String runId;
+        private Secret apiKey;
+        private BuildstashTimeouts timeouts;
+        private BuildstashUploadRequest request;
+        private int attempts;
+        private long nextAttemptMillis;
+    }
+
+    static File getRootDir() {
+        return new File(Jenkins.get().getRootDir(), DIR_NAME);
+    }
+
+    /**
+     * Queues an upload whose upload URL request found Buildstash unreachable.
+     * The files are copied from the request's file source to the controller, and the request
+     * is changed to refer to the copies.
+     * @param apiKey The expanded API key
+     * @return A queued record to store on the run, replaced once the upload has been delivered
+     */
+    static BuildstashUploadResponse enqueue(Run<?, ?> run, BuildstashUploadRequest request, String apiKey,
+                                            BuildstashTimeouts timeouts, TaskListener listener) throws IOException, InterruptedException {
+        String id = UUID.randomUUID().toString();
+        File dir = new File(getRootDir(), id);
+        listener.getLogger().println("Copying files to the Buildstash outbox...");
+        try {
+            Files.createDirectories(dir.toPath());
+            UploadFileSource source = request.getFileSource();
+            FileStat primaryFile = request.getPrimaryFileStat();
+            FileStat expansionFile = request.getExpansionFileStat();
+            // The files are hashed while they are copied, so the idempotency key follows their content
+            // rather than their path, which changes with the copy
+            MessageDigest primaryDigest = sha256();
+            request.setPrimaryFilePath(spool(source, primaryFile, new File(dir, "primary"), primaryDigest));
+            String expansionName = null;
+            String expansionSha256 = null;
+            if (expansionFile != null && expansionFile.exists()) {
+                MessageDigest expansionDigest = sha256();
+                request.setExpansionFilePath(spool(source, expansionFile, new File(dir, "expansion"), expansionDigest));
+                expansionName = expansionFile.getName();
+                expansionSha256 = HexFormat.of().formatHex(expansionDigest.digest());
+            }
+            request.setIdempotencyKey(request.computeIdempotencyKey(primaryFile.getName(),
+                    HexFormat.of().formatHex(primaryDigest.digest()), expansionName, expansionSha256));
+            request.setWorkspace(null);
+
+            Entry entry = new Entry();
+            entry.runId = run.getExternalizableId();
+            entry.apiKey = Secret.fromString(apiKey);
+            entry.timeouts = timeouts;
+            entry.request = request;
+            // Written last, so that the drainer never picks up a partially copied entry
+            new XmlFile(Jenkins.XSTREAM2, new File(dir, ENTRY_FILE_NAME)).write(entry);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            Util.deleteRecursive(dir);
+            throw e;
+        }
+
+        BuildstashUploadResponse queued = new BuildstashUploadResponse(
+                "Queued in the Buildstash outbox until Buildstash is reachable", null, false, null, null);
+        queued.setOutboxId(id);
+        return queued;
+    }
+
+    /**
+     * Copies a file from an upload's file source into a directory on the controller.
+     * @return The path of the copy, relative to the parent of the directory
+     */
+    static String spool(UploadFileSource source, FileStat file, File dir) throws IOException, InterruptedException {
+        return spool(source, file, dir, null);
+    }
+
+    /**
+     * Copies a file into a directory on the controller, updating a digest with its content on the way.
+     * @param digest Digest to update, or null
+     */
+    private static String spool(UploadFileSource source, FileStat file, File dir, MessageDigest digest)
+            throws IOException, InterruptedException {
+        if (file == null || !file.exists()) {
+            throw new IOException("File not found: " + (file != null ? file.getPath() : null));
+        }
+        Files.createDirectories(dir.toPath());
+        File target = new File(dir, file.getName());
+        try (InputStream in = source.open(file.getPath())) {
+            Files.copy(digest != null ? new DigestInputStream(in, digest) : in, target.toPath());
+        }
+        return dir.getName() + "/" + target.getName();
+    }
+
+    private static MessageDigest sha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Delivers an outbox entry, unless it is waiting for its next attempt. The entry is removed once
+     * delivered, or once delivery has failed for a reason retrying won't fix; either result is recorded on the run.
+     */
+    static void deliver(File dir) {
+        String id = dir.getName();
+        XmlFile entryFile = new XmlFile(Jenkins.XSTREAM2, new File(dir, ENTRY_FILE_NAME));
+        Entry entry;
+        try {
+            entry = (Entry) entryFile.read();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Dropping unreadable Buildstash outbox entry " + id, e);
+            deleteEntry(dir);
+            return;
+        }
+        if (entry.nextAttemptMillis > System.currentTimeMillis()) {
+            return;
+        }
+
+        Run<?, ?> run = entry.runId != null ? Run.fromExternalizableId(entry.runId) : null;
+        // The build log is closed by now, so delivery is logged next to the run's other Buildstash files
+        File logFile = run != null
+                ? new File(run.getRootDir(), BuildstashDeferredUpload.LOG_FILE_NAME)
+                : new File(dir, DELIVERY_LOG_FILE_NAME);
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2);
+             StreamTaskListener listener = new StreamTaskListener(new FileOutputStream(logFile, true), StandardCharsets.UTF_8)) {
+            BuildstashUploadRequest request = entry.request;
+            request.setFileSource(UploadFileSource.of(VirtualFile.forFile(dir)));
+            listener.getLogger().println("Delivering Buildstash upload " + id + " from the outbox (attempt " + (entry.attempts + 1) + ")...");
+            try {
+                BuildstashUploadService uploadService = new BuildstashUploadService(Secret.toString(entry.apiKey), listener, entry.timeouts);
+                BuildstashUploadResponse response = uploadService.upload(request);
+                response.setOutboxId(id);
+                BuildstashUploadHelper.logResults(listener, response);
+                record(run, request, response, listener);
+                deleteEntry(dir);
+            } catch (BuildstashUnavailableException e) {
+                entry.attempts++;
+                long delay = RETRY_BACKOFF.delayMillis(entry.attempts - 1);
+                entry.nextAttemptMillis = System.currentTimeMillis() + delay;
+                unavailableUntilMillis = System.currentTimeMillis() + RETRY_BACKOFF.getInitialDelayMillis();
+                entryFile.write(entry);
+                listener.getLogger().println("Buildstash is still unreachable, retrying in " + delay / 1000 + "s: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // Retrying won't help, e.g. the API key was revoked
+                listener.error("Buildstash upload from the outbox failed: " + e.getMessage());
+                e.printStackTrace(listener.getLogger());
+                BuildstashUploadResponse failed = new BuildstashUploadResponse(
+                        "Delivery from the Buildstash outbox failed: " + e.getMessage(), null, false, null, null);
+                failed.setOutboxId(id);
+                failed.setDeliveryFailed(true);
+                record(run, request, failed, listener);
+                deleteEntry(dir);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to deliver Buildstash outbox entry " + id, e);
+        }
+    }
+
+    private static void record(Run<?, ?> run, BuildstashUploadRequest request, BuildstashUploadResponse response, TaskListener listener) {
+        if (run == null) {
+            return;
+        }
+        BuildstashUploadHelper.recordResults(run, request, response, listener);
+        try {
+            // The run may have been saved long before its results action was changed
+            run.save();
+        } catch (IOException e) {
+            listener.getLogger().println("Warning: failed to save " + run + ": " + e.getMessage());
+        }
+    }
+
+    private static void deleteEntry(File dir) {
+        try {
+            Util.deleteRecursive(dir);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete Buildstash outbox entry " + dir, e);
+        }
+    }
+
+    /**
+     * Delivers queued uploads, oldest first, with at most {@link #MAX_CONCURRENT_DELIVERIES} at a time.
+     */
+    @Extension
+    public static class Drainer extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() {
+            if (System.currentTimeMillis() < unavailableUntilMillis || !BuildstashCircuitBreaker.get().allowsRequests()) {
+                return;
+            }
+            File[] dirs = getRootDir().listFiles(File::isDirectory);
+            if (dirs == null) {
+                return;
+            }
+            Arrays.sort(dirs, Comparator.comparingLong(File::lastModified));
+            for (File dir : dirs) {
+                if (DELIVERING.size() >= MAX_CONCURRENT_DELIVERIES) {
+                    return;
+                }
+                String id = dir.getName();
+                if (!new File(dir, ENTRY_FILE_NAME).isFile() || !DELIVERING.add(id)) {
+                    continue;
+                }
+                BuildstashExecutors.uploads().submit(() -> {
+                    try {
+                        deliver(dir);
+                    } finally {
+                        DELIVERING.remove(id);
+                    }
+                });
+            }
+        }
+    }
+}
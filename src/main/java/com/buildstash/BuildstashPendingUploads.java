@@ -0,0 +1,208 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.PeriodicWork;
+import hudson.model.TaskListener;
+import hudson.util.LogTaskListener;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of pending uploads that have been requested but not yet verified or cancelled.
+ * Entries are persisted in {@code $JENKINS_HOME/buildstash-pending-uploads.xml}, so that uploads
+ * interrupted by a failure, a dead build or a controller restart are still known afterwards.
+ * {@link Sweeper} cancels pending uploads that no upload on this controller is working on anymore,
+ * so they don't keep using server storage and quota.
+ */
+public final class BuildstashPendingUploads {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildstashPendingUploads.class.getName());
+
+    static final String FILE_NAME = "buildstash-pending-uploads.xml";
+
+    /** Pending uploads that a running upload in this JVM is still working on. */
+    private static final Set<String> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    private static final Object LOCK = new Object();
+
+    private BuildstashPendingUploads() {
+    }
+
+    /**
+     * Persisted pending upload.
+     */
+    static final class Entry {
+        private String pendingUploadId;
+        private Secret apiKey;
+        private long createdMillis;
+
+        String getPendingUploadId() { return pendingUploadId; }
+    }
+
+    /**
+     * Persisted registry content.
+     */
+    static final class State {
+        private List<Entry> entries = new ArrayList<>();
+    }
+
+    /**
+     * Records a pending upload returned by the upload URL request, as being worked on.
+     */
+    static void register(String pendingUploadId, String apiKey) {
+        if (pendingUploadId == null) {
+            return;
+        }
+        ACTIVE.add(pendingUploadId);
+        update(state -> {
+            if (state.entries.stream().noneMatch(e -> pendingUploadId.equals(e.pendingUploadId))) {
+                Entry entry = new Entry();
+                entry.pendingUploadId = pendingUploadId;
+                entry.apiKey = Secret.fromString(apiKey);
+                entry.createdMillis = System.currentTimeMillis();
+                state.entries.add(entry);
+            }
+        });
+    }
+
+    /**
+     * Marks a pending upload as no longer worked on. Unless it was also completed,
+     * the sweeper cancels it.
+     */
+    static void release(String pendingUploadId) {
+        if (pendingUploadId != null) {
+            ACTIVE.remove(pendingUploadId);
+        }
+    }
+
+    /**
+     * Forgets a pending upload that was verified or cancelled.
+     */
+    static void complete(String pendingUploadId) {
+        if (pendingUploadId == null) {
+            return;
+        }
+        update(state -> state.entries.removeIf(e -> pendingUploadId.equals(e.pendingUploadId)));
+    }
+
+    private interface Update {
+        void apply(State state);
+    }
+
+    private static void update(Update update) {
+        XmlFile file = getFile();
+        if (file == null) {
+            return;
+        }
+        synchronized (LOCK) {
+            try {
+                State state = load(file);
+                update.apply(state);
+                file.write(state);
+            } catch (IOException e) {
+                // Cleanup is best effort, never fail an upload over it
+                LOGGER.log(Level.WARNING, "Failed to update " + file, e);
+            }
+        }
+    }
+
+    private static State load(XmlFile file) throws IOException {
+        if (!file.exists()) {
+            return new State();
+        }
+        State state = (State) file.read();
+        if (state.entries == null) {
+            state.entries = new ArrayList<>();
+        }
+        return state;
+    }
+
+    private static XmlFile getFile() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        return jenkins != null ? new XmlFile(Jenkins.XSTREAM2, new File(jenkins.getRootDir(), FILE_NAME)) : null;
+    }
+
+    /**
+     * Gets the recorded pending uploads that no upload in this JVM is working on.
+     */
+    static List<Entry> getOrphans() throws IOException {
+        XmlFile file = getFile();
+        if (file == null) {
+            return List.of();
+        }
+        List<Entry> orphans = new ArrayList<>();
+        synchronized (LOCK) {
+            for (Entry entry : load(file).entries) {
+                if (!ACTIVE.contains(entry.pendingUploadId)) {
+                    orphans.add(entry);
+                }
+            }
+        }
+        return orphans;
+    }
+
+    /**
+     * Cancels a pending upload on the server.
+     */
+    interface Canceller {
+        /**
+         * @return Whether the pending upload is gone
+         */
+        boolean cancel(Entry entry) throws Exception;
+    }
+
+    /**
+     * Cancels recorded pending uploads that no upload in this JVM is working on, and forgets the ones
+     * that are gone. Stops early while the circuit breaker blocks API calls.
+     * @return The number of pending uploads cancelled
+     */
+    static int sweep(BuildstashCircuitBreaker breaker, Canceller canceller) throws Exception {
+        int cancelled = 0;
+        for (Entry entry : getOrphans()) {
+            if (!breaker.allowsRequests()) {
+                // Try again on the next run rather than adding to an outage
+                break;
+            }
+            // An upload may have picked the pending upload up again since the snapshot, e.g. through
+            // an idempotent replay of its upload URL request
+            if (ACTIVE.contains(entry.pendingUploadId)) {
+                continue;
+            }
+            if (canceller.cancel(entry)) {
+                complete(entry.pendingUploadId);
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Cancels orphaned pending uploads.
+     */
+    @Extension
+    public static class Sweeper extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(15);
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            TaskListener listener = new LogTaskListener(LOGGER, Level.INFO);
+            sweep(BuildstashCircuitBreaker.get(), entry -> new BuildstashUploadService(Secret.toString(entry.apiKey), listener)
+                    .abortPendingUpload(entry.pendingUploadId));
+        }
+    }
+}
@@ -23,6 +23,8 @@ public class BuildstashStep extends Step implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    static final int DEFAULT_PROCESSING_TIMEOUT_MINUTES = 30;
+
     private Secret apiKey;
     private String structure = "file";
     private String primaryFilePath;
@@ -45,6 +47,14 @@ public class BuildstashStep extends Step implements Serializable {
     private String platform;
     private String stream;
     private String notes;
+    private String maxSizeMb;
+    private String maxSizeGrowthPercent;
+    private String sizeLimitResult = ArtifactSizeGate.DEFAULT_RESULT;
+    private BuildstashTimeouts timeouts;
+    private boolean queueWhenUnavailable;
+    private boolean wait = true;
+    private boolean waitForProcessing;
+    private int processingTimeoutMinutes = DEFAULT_PROCESSING_TIMEOUT_MINUTES;
 
     @DataBoundConstructor
     public BuildstashStep() {
@@ -180,6 +190,54 @@ public class BuildstashStep extends Step implements Serializable {
     @DataBoundSetter
     public void setNotes(String notes) { this.notes = notes; }
 
+    public String getMaxSizeMb() { return maxSizeMb; }
+
+    @DataBoundSetter
+    public void setMaxSizeMb(String maxSizeMb) { this.maxSizeMb = maxSizeMb; }
+
+    public String getMaxSizeGrowthPercent() { return maxSizeGrowthPercent; }
+
+    @DataBoundSetter
+    public void setMaxSizeGrowthPercent(String maxSizeGrowthPercent) { this.maxSizeGrowthPercent = maxSizeGrowthPercent; }
+
+    public String getSizeLimitResult() { return sizeLimitResult; }
+
+    @DataBoundSetter
+    public void setSizeLimitResult(String sizeLimitResult) { this.sizeLimitResult = sizeLimitResult; }
+
+    public BuildstashTimeouts getTimeouts() { return timeouts; }
+
+    @DataBoundSetter
+    public void setTimeouts(BuildstashTimeouts timeouts) { this.timeouts = timeouts; }
+
+    public boolean isQueueWhenUnavailable() { return queueWhenUnavailable; }
+
+    /**
+     * When true, an upload that finds Buildstash unreachable is queued in the outbox and
+     * delivered later, instead of failing the step.
+     */
+    @DataBoundSetter
+    public void setQueueWhenUnavailable(boolean queueWhenUnavailable) { this.queueWhenUnavailable = queueWhenUnavailable; }
+
+    public boolean isWait() { return wait; }
+
+    /**
+     * When false, the step returns a handle as soon as the upload is prepared, and
+     * the upload continues in the background until joined with <code>buildstashAwait</code>.
+     */
+    @DataBoundSetter
+    public void setWait(boolean wait) { this.wait = wait; }
+
+    public boolean isWaitForProcessing() { return waitForProcessing; }
+
+    @DataBoundSetter
+    public void setWaitForProcessing(boolean waitForProcessing) { this.waitForProcessing = waitForProcessing; }
+
+    public int getProcessingTimeoutMinutes() { return processingTimeoutMinutes; }
+
+    @DataBoundSetter
+    public void setProcessingTimeoutMinutes(int processingTimeoutMinutes) { this.processingTimeoutMinutes = processingTimeoutMinutes; }
+
     @Extension
     public static class DescriptorImpl extends StepDescriptor {
 
@@ -209,5 +267,12 @@ public class BuildstashStep extends Step implements Serializable {
             items.add("File + Expansion", "file+expansion");
             return items;
         }
+
+        public ListBoxModel doFillSizeLimitResultItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add("Fail the build", "FAILURE");
+            items.add("Mark the build unstable", "UNSTABLE");
+            return items;
+        }
     }
 } 
\ No newline at end of file
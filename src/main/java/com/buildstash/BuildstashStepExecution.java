@@ -1,33 +1,92 @@
 package com.buildstash;
 
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.FilePath;
+import hudson.Util;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.util.Secret;
+import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
-import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.springframework.security.core.Authentication;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Execution class for the Buildstash step.
  * Handles the actual upload process to the Buildstash service.
+ * The upload runs on a background thread, and waiting for server-side processing is done
+ * with asynchronous polling so that no thread is held while Buildstash processes the build.
+ * With <code>wait: false</code> the step returns a handle as soon as the upload is prepared, and the
+ * upload continues in the background until {@link BuildstashAwaitStep} joins it.
  */
-public class BuildstashStepExecution extends SynchronousNonBlockingStepExecution<Map<String, Object>> {
+public class BuildstashStepExecution extends StepExecution {
 
     private static final long serialVersionUID = 1L;
 
+    private static final Logger LOGGER = Logger.getLogger(BuildstashStepExecution.class.getName());
+
     private final BuildstashStep step;
 
+    private transient volatile Future<?> task;
+    private transient volatile BuildstashUploadService uploadService;
+    private transient volatile CompletableFuture<?> processingWait;
+
     public BuildstashStepExecution(BuildstashStep step, StepContext context) {
         super(context);
         this.step = step;
     }
 
     @Override
-    protected Map<String, Object> run() throws Exception {
+    public boolean start() throws Exception {
+        Authentication auth = Jenkins.getAuthentication2();
+        task = BuildstashExecutors.uploads().submit(() -> {
+            try (ACLContext ignored = ACL.as2(auth)) {
+                run();
+            } catch (Throwable t) {
+                getContext().onFailure(t);
+            }
+        });
+        return false;
+    }
+
+    @Override
+    public void stop(@NonNull Throwable cause) throws Exception {
+        // Abort in-flight transfers right away rather than waiting for the current part to finish
+        BuildstashUploadService currentService = uploadService;
+        if (currentService != null) {
+            currentService.cancel();
+        }
+        Future<?> currentTask = task;
+        if (currentTask != null) {
+            currentTask.cancel(true);
+        }
+        CompletableFuture<?> currentWait = processingWait;
+        if (currentWait != null) {
+            currentWait.cancel(false);
+        }
+        super.stop(cause);
+    }
+
+    @Override
+    public void onResume() {
+        getContext().onFailure(new AbortException("Resume after a restart is not supported for the Buildstash upload step"));
+    }
+
+    private void run() throws Exception {
         TaskListener listener = getContext().get(TaskListener.class);
         FilePath workspace = getContext().get(FilePath.class);
         Run<?, ?> run = getContext().get(Run.class);
@@ -52,78 +111,142 @@ public class BuildstashStepExecution extends SynchronousNonBlockingStepExecution
             env = envFromContext != null ? envFromContext : new EnvVars();
         }
         
+        // Snapshot the environment, URLs and actions once for request creation and detection
+        UploadContext context = UploadContext.of(run, listener, env);
+
         // Expand environment variables in all fields
         Secret apiKeySecret = step.getApiKey();
         String apiKeyPlain = apiKeySecret != null ? Secret.toString(apiKeySecret) : null;
-        String expandedApiKey = BuildstashUploadHelper.expand(env, apiKeyPlain);
-        String expandedStructure = BuildstashUploadHelper.expand(env, step.getStructure());
+        String expandedApiKey = context.expand(apiKeyPlain);
+        String expandedStructure = context.expand(step.getStructure());
         // Ensure structure defaults to "file" if not set
         if (expandedStructure == null || expandedStructure.isBlank()) {
             expandedStructure = "file";
         }
-        String expandedPrimaryFilePath = BuildstashUploadHelper.expand(env, step.getPrimaryFilePath());
-        String expandedExpansionFilePath = BuildstashUploadHelper.expand(env, step.getExpansionFilePath());
-        String expandedVersionComponent1Major = BuildstashUploadHelper.expand(env, step.getVersionComponent1Major());
-        String expandedVersionComponent2Minor = BuildstashUploadHelper.expand(env, step.getVersionComponent2Minor());
-        String expandedVersionComponent3Patch = BuildstashUploadHelper.expand(env, step.getVersionComponent3Patch());
-        String expandedVersionComponentExtra = BuildstashUploadHelper.expand(env, step.getVersionComponentExtra());
-        String expandedVersionComponentMeta = BuildstashUploadHelper.expand(env, step.getVersionComponentMeta());
-        String expandedCustomBuildNumber = BuildstashUploadHelper.expand(env, step.getCustomBuildNumber());
-        String expandedLabels = BuildstashUploadHelper.expand(env, step.getLabels());
-        String expandedArchitectures = BuildstashUploadHelper.expand(env, step.getArchitectures());
-        String expandedPlatform = BuildstashUploadHelper.expand(env, step.getPlatform());
-        String expandedStream = BuildstashUploadHelper.expand(env, step.getStream());
-        String expandedNotes = BuildstashUploadHelper.expand(env, step.getNotes());
-        String expandedVcHostType = BuildstashUploadHelper.expand(env, step.getVcHostType());
-        String expandedVcHost = BuildstashUploadHelper.expand(env, step.getVcHost());
-        String expandedVcRepoName = BuildstashUploadHelper.expand(env, step.getVcRepoName());
-        String expandedVcRepoUrl = BuildstashUploadHelper.expand(env, step.getVcRepoUrl());
-        String expandedVcBranch = BuildstashUploadHelper.expand(env, step.getVcBranch());
-        String expandedVcCommitSha = BuildstashUploadHelper.expand(env, step.getVcCommitSha());
-        String expandedVcCommitUrl = BuildstashUploadHelper.expand(env, step.getVcCommitUrl());
+        String expandedPrimaryFilePath = context.expand(step.getPrimaryFilePath());
+        String expandedExpansionFilePath = context.expand(step.getExpansionFilePath());
+        String expandedVersionComponent1Major = context.expand(step.getVersionComponent1Major());
+        String expandedVersionComponent2Minor = context.expand(step.getVersionComponent2Minor());
+        String expandedVersionComponent3Patch = context.expand(step.getVersionComponent3Patch());
+        String expandedVersionComponentExtra = context.expand(step.getVersionComponentExtra());
+        String expandedVersionComponentMeta = context.expand(step.getVersionComponentMeta());
+        String expandedCustomBuildNumber = context.expand(step.getCustomBuildNumber());
+        String expandedLabels = context.expand(step.getLabels());
+        String expandedArchitectures = context.expand(step.getArchitectures());
+        String expandedPlatform = context.expand(step.getPlatform());
+        String expandedStream = context.expand(step.getStream());
+        String expandedNotes = context.expand(step.getNotes());
+        String expandedVcHostType = context.expand(step.getVcHostType());
+        String expandedVcHost = context.expand(step.getVcHost());
+        String expandedVcRepoName = context.expand(step.getVcRepoName());
+        String expandedVcRepoUrl = context.expand(step.getVcRepoUrl());
+        String expandedVcBranch = context.expand(step.getVcBranch());
+        String expandedVcCommitSha = context.expand(step.getVcCommitSha());
+        String expandedVcCommitUrl = context.expand(step.getVcCommitUrl());
+        String expandedMaxSizeMb = context.expand(step.getMaxSizeMb());
+        String expandedMaxSizeGrowthPercent = context.expand(step.getMaxSizeGrowthPercent());
 
         // Validate required parameters with expanded values
         BuildstashUploadHelper.validateParameters(expandedApiKey, expandedPrimaryFilePath, expandedVersionComponent1Major,
                 expandedVersionComponent2Minor, expandedVersionComponent3Patch, expandedPlatform, expandedStream);
 
         // Create upload service
-        BuildstashUploadService uploadService = new BuildstashUploadService(expandedApiKey, listener);
+        BuildstashUploadService uploadService = new BuildstashUploadService(expandedApiKey, listener, step.getTimeouts());
+        this.uploadService = uploadService;
 
         // Prepare upload request with expanded values
-        BuildstashUploadRequest request = BuildstashUploadHelper.createUploadRequest(workspace, run, expandedStructure,
+        BuildstashUploadRequest request = BuildstashUploadHelper.createUploadRequest(workspace, context, expandedStructure,
                 expandedPrimaryFilePath, expandedExpansionFilePath, expandedVersionComponent1Major,
                 expandedVersionComponent2Minor, expandedVersionComponent3Patch, expandedVersionComponentExtra,
                 expandedVersionComponentMeta, expandedCustomBuildNumber, expandedLabels, expandedArchitectures,
                 expandedPlatform, expandedStream, expandedNotes, expandedVcHostType, expandedVcHost,
                 expandedVcRepoName, expandedVcRepoUrl, expandedVcBranch, expandedVcCommitSha, expandedVcCommitUrl);
         
-        // Auto-detect SCM info from BuildData (for pipelines)
+        // Auto-detect SCM info and stat the files on the agent concurrently, while the API connection warms up
         // This MUST be called after createUploadRequest so the request object is fully initialized
-        VersionControlDetector.populateVersionControlInfo(run, request, listener);
+        BuildstashUploadHelper.prepareRequest(context, request, uploadService);
+
+        // Enforce artifact size budgets before any bytes are uploaded
+        BuildstashUploadHelper.enforceSizeLimits(run, request, expandedMaxSizeMb, expandedMaxSizeGrowthPercent,
+                step.getSizeLimitResult(), listener);
+
+        if (!step.isWait()) {
+            // The workspace is only ours until the step returns, so upload from copies on the controller
+            File copies = BuildstashBackgroundUploads.copyFiles(request, listener);
+            // Hand the handle back to the pipeline now, and keep uploading on this (non-CPS) thread
+            CompletableFuture<Map<String, Object>> background = new CompletableFuture<>();
+            background.whenComplete((result, error) -> deleteCopies(copies));
+            String handle = BuildstashBackgroundUploads.register(run, uploadService, background);
+            listener.getLogger().println("Buildstash upload continues in the background, use buildstashAwait('" + handle + "') to wait for it");
+            getContext().onSuccess(handle);
+            try {
+                upload(run, request, uploadService, expandedApiKey, listener).whenComplete((result, error) -> {
+                    if (error != null) {
+                        background.completeExceptionally(unwrap(error));
+                    } else {
+                        background.complete(result);
+                    }
+                });
+            } catch (Throwable t) {
+                listener.getLogger().println("Buildstash background upload failed: " + t.getMessage());
+                background.completeExceptionally(t);
+            }
+            return;
+        }
+
+        upload(run, request, uploadService, expandedApiKey, listener).whenComplete((result, error) -> {
+            if (error != null) {
+                getContext().onFailure(unwrap(error));
+            } else {
+                getContext().onSuccess(result);
+            }
+        });
+    }
 
-        // Execute upload
-        BuildstashUploadResponse response = uploadService.upload(request);
+    /**
+     * Uploads the build, records the results and optionally waits for processing.
+     * @return The step's result map, completed once processing has finished if the step waits for it
+     */
+    private CompletableFuture<Map<String, Object>> upload(Run<?, ?> run, BuildstashUploadRequest request,
+                                                          BuildstashUploadService uploadService, String apiKey,
+                                                          TaskListener listener) throws Exception {
+        // Execute upload, or queue it in the outbox if Buildstash is unreachable and the step allows it
+        BuildstashUploadResponse response = BuildstashUploadHelper.uploadOrQueue(run, request, uploadService, apiKey,
+                step.getTimeouts(), step.isQueueWhenUnavailable(), listener);
 
         // Log results
         BuildstashUploadHelper.logResults(listener, response);
 
-        // Store results as build actions for later access (for UI display)
-        // Check if there's already a BuildstashBuildAction and add to it, otherwise create a new one
-        BuildstashBuildAction existingAction = run.getAction(BuildstashBuildAction.class);
-        if (existingAction != null) {
-            existingAction.addResponse(response);
-        } else {
-            run.addAction(new BuildstashBuildAction(response));
+        // Store results as build actions for later access (for UI display) and record metrics for trends
+        BuildstashUploadHelper.recordResults(run, request, response, listener);
+
+        if (step.isWaitForProcessing() && response.isPendingProcessing()) {
+            // Poll asynchronously, the result completes from the poller's callback
+            listener.getLogger().println("Waiting for Buildstash to finish processing build " + response.getBuildId() + "...");
+            CompletableFuture<BuildstashUploadResponse> wait = uploadService.awaitProcessing(
+                    response.getBuildId(), Duration.ofMinutes(step.getProcessingTimeoutMinutes()));
+            processingWait = wait;
+            return wait.thenApply(status -> {
+                BuildstashUploadHelper.recordProcessingState(run, status, listener);
+                response.setPendingProcessing(status.isPendingProcessing());
+                return BuildstashUploadHelper.toResultMap(response);
+            });
         }
 
         // Return response as Map so it can be used in pipeline scripts without whitelisting
-        Map<String, Object> result = new HashMap<>();
-        result.put("buildId", response.getBuildId());
-        result.put("buildInfoUrl", response.getBuildInfoUrl());
-        result.put("downloadUrl", response.getDownloadUrl());
-        result.put("pendingProcessing", response.isPendingProcessing());
-        result.put("message", response.getMessage());
-        return result;
+        return CompletableFuture.completedFuture(BuildstashUploadHelper.toResultMap(response));
+    }
+
+    private static void deleteCopies(File dir) {
+        try {
+            Util.deleteRecursive(dir);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete " + dir, e);
+        }
+    }
+
+    static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
 
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.buildstash;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Thrown when a Buildstash HTTP call exceeds its timeout.
+ * Records the upload phase in which the timeout happened.
+ */
+public class BuildstashTimeoutException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UploadPhase phase;
+
+    public BuildstashTimeoutException(UploadPhase phase, Duration timeout, Throwable cause) {
+        super(phase == UploadPhase.DEADLINE
+                ? "Buildstash upload exceeded its overall deadline of " + timeout.toSeconds() + "s"
+                : "Buildstash upload timed out during " + phase.getDescription() + " after " + timeout.toSeconds() + "s", cause);
+        this.phase = phase;
+    }
+
+    public UploadPhase getPhase() {
+        return phase;
+    }
+}
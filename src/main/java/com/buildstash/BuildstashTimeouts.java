@@ -0,0 +1,146 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.Serializable;
+import java.time.Duration;
+
+/**
+ * Timeouts for Buildstash HTTP calls, configurable globally and per step.
+ * A value of 0 means "not set": per-step values fall back to the global configuration,
+ * and global values fall back to the built-in defaults. The upload deadline can also be
+ * set to {@link #NO_DEADLINE}, so a step can opt out of a global deadline.
+ */
+public class BuildstashTimeouts extends AbstractDescribableImpl<BuildstashTimeouts> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 30;
+    static final int DEFAULT_REQUEST_TIMEOUT_SECONDS = 60;
+    static final int DEFAULT_PART_TIMEOUT_SECONDS = 120;
+    static final int DEFAULT_MIN_THROUGHPUT_KBPS = 64;
+    static final int DEFAULT_VERIFY_TIMEOUT_SECONDS = 300;
+
+    /** Upload deadline value meaning "no overall deadline", as opposed to 0 which inherits one. */
+    public static final int NO_DEADLINE = -1;
+
+    private int connectTimeoutSeconds;
+    private int requestTimeoutSeconds;
+    private int partTimeoutSeconds;
+    private int minThroughputKbps;
+    private int verifyTimeoutSeconds;
+    private int uploadDeadlineMinutes;
+
+    @DataBoundConstructor
+    public BuildstashTimeouts() {
+        // Default constructor required for Jenkins
+    }
+
+    /**
+     * Creates timeouts where every unset value is taken from the given fallback.
+     * @param fallback Timeouts to inherit from, may be null
+     * @return Merged timeouts
+     */
+    public BuildstashTimeouts withFallback(BuildstashTimeouts fallback) {
+        if (fallback == null) {
+            return this;
+        }
+        BuildstashTimeouts merged = new BuildstashTimeouts();
+        merged.connectTimeoutSeconds = connectTimeoutSeconds > 0 ? connectTimeoutSeconds : fallback.connectTimeoutSeconds;
+        merged.requestTimeoutSeconds = requestTimeoutSeconds > 0 ? requestTimeoutSeconds : fallback.requestTimeoutSeconds;
+        merged.partTimeoutSeconds = partTimeoutSeconds > 0 ? partTimeoutSeconds : fallback.partTimeoutSeconds;
+        merged.minThroughputKbps = minThroughputKbps > 0 ? minThroughputKbps : fallback.minThroughputKbps;
+        merged.verifyTimeoutSeconds = verifyTimeoutSeconds > 0 ? verifyTimeoutSeconds : fallback.verifyTimeoutSeconds;
+        merged.uploadDeadlineMinutes = uploadDeadlineMinutes != 0 ? uploadDeadlineMinutes : fallback.uploadDeadlineMinutes;
+        return merged;
+    }
+
+    // Getters and Setters
+    public int getConnectTimeoutSeconds() { return connectTimeoutSeconds; }
+
+    @DataBoundSetter
+    public void setConnectTimeoutSeconds(int connectTimeoutSeconds) { this.connectTimeoutSeconds = connectTimeoutSeconds; }
+
+    public int getRequestTimeoutSeconds() { return requestTimeoutSeconds; }
+
+    @DataBoundSetter
+    public void setRequestTimeoutSeconds(int requestTimeoutSeconds) { this.requestTimeoutSeconds = requestTimeoutSeconds; }
+
+    public int getPartTimeoutSeconds() { return partTimeoutSeconds; }
+
+    @DataBoundSetter
+    public void setPartTimeoutSeconds(int partTimeoutSeconds) { this.partTimeoutSeconds = partTimeoutSeconds; }
+
+    public int getMinThroughputKbps() { return minThroughputKbps; }
+
+    @DataBoundSetter
+    public void setMinThroughputKbps(int minThroughputKbps) { this.minThroughputKbps = minThroughputKbps; }
+
+    public int getVerifyTimeoutSeconds() { return verifyTimeoutSeconds; }
+
+    @DataBoundSetter
+    public void setVerifyTimeoutSeconds(int verifyTimeoutSeconds) { this.verifyTimeoutSeconds = verifyTimeoutSeconds; }
+
+    public int getUploadDeadlineMinutes() { return uploadDeadlineMinutes; }
+
+    @DataBoundSetter
+    public void setUploadDeadlineMinutes(int uploadDeadlineMinutes) { this.uploadDeadlineMinutes = uploadDeadlineMinutes; }
+
+    /**
+     * Get the timeout for establishing connections.
+     */
+    public Duration connectTimeout() {
+        return Duration.ofSeconds(orDefault(connectTimeoutSeconds, DEFAULT_CONNECT_TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Get the timeout for Buildstash API requests (upload request, part URLs, status checks).
+     */
+    public Duration requestTimeout() {
+        return Duration.ofSeconds(orDefault(requestTimeoutSeconds, DEFAULT_REQUEST_TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Get the timeout for transferring a part or file of the given size to storage.
+     * This is the base part timeout plus the time needed at the minimum acceptable throughput.
+     * It bounds the whole request, not the time between bytes: a connection that stalls
+     * part way through still holds the transfer until this budget runs out.
+     */
+    public Duration transferTimeout(long bytes) {
+        long floorBytesPerSecond = orDefault(minThroughputKbps, DEFAULT_MIN_THROUGHPUT_KBPS) * 1024L;
+        long seconds = orDefault(partTimeoutSeconds, DEFAULT_PART_TIMEOUT_SECONDS) + bytes / floorBytesPerSecond;
+        return Duration.ofSeconds(seconds);
+    }
+
+    /**
+     * Get the timeout for the verify request.
+     */
+    public Duration verifyTimeout() {
+        return Duration.ofSeconds(orDefault(verifyTimeoutSeconds, DEFAULT_VERIFY_TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Get the overall deadline for an upload.
+     * @return The deadline, or null if uploads have no overall deadline (0 or {@link #NO_DEADLINE})
+     */
+    public Duration uploadDeadline() {
+        return uploadDeadlineMinutes > 0 ? Duration.ofMinutes(uploadDeadlineMinutes) : null;
+    }
+
+    private static int orDefault(int value, int defaultValue) {
+        return value > 0 ? value : defaultValue;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<BuildstashTimeouts> {
+
+        @Override
+        public String getDisplayName() {
+            return "Buildstash Timeouts";
+        }
+    }
+}
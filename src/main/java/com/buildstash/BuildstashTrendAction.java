@@ -0,0 +1,147 @@
+package com.buildstash;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import jenkins.model.TransientActionFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Job action showing upload size and throughput trends for Buildstash uploads.
+ * Charts are drawn from the job-level metrics history, not from individual build records.
+ */
+public class BuildstashTrendAction implements Action {
+
+    /** Number of most recent uploads plotted on each chart. */
+    static final int MAX_POINTS = 50;
+
+    static final int CHART_WIDTH = 600;
+    static final int CHART_HEIGHT = 120;
+
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    private final Job<?, ?> job;
+
+    public BuildstashTrendAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "symbol-cube";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Buildstash Upload Trend";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "buildstash-trend";
+    }
+
+    /**
+     * Get the most recent upload summaries to chart, oldest first.
+     * @return Up to {@link #MAX_POINTS} records
+     */
+    public List<BuildstashTrendRecord> getRecords() {
+        List<BuildstashTrendRecord> records = BuildstashMetricsStore.recordsOf(job);
+        return records.subList(Math.max(0, records.size() - MAX_POINTS), records.size());
+    }
+
+    /**
+     * Get the chart series for the recorded metrics.
+     * @return Series for size, duration, throughput and verify time
+     */
+    public List<TrendSeries> getSeries() {
+        List<BuildstashTrendRecord> records = getRecords();
+        if (records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<TrendSeries> series = new ArrayList<>();
+        series.add(TrendSeries.of("Artifact size", "MB", records, r -> r.totalBytes() / MEGABYTE));
+        series.add(TrendSeries.of("Upload duration", "s", records, r -> r.getTotalMillis() / 1000.0));
+        series.add(TrendSeries.of("Effective throughput", "MB/s", records, BuildstashTrendRecord::megabytesPerSecond));
+        series.add(TrendSeries.of("Verify time", "s", records, r -> r.getVerifyMillis() / 1000.0));
+        return series;
+    }
+
+    /**
+     * A single chart line, pre-scaled to SVG coordinates.
+     */
+    public static class TrendSeries {
+
+        private final String title;
+        private final String unit;
+        private final String points;
+        private final double latest;
+        private final double max;
+
+        private TrendSeries(String title, String unit, String points, double latest, double max) {
+            this.title = title;
+            this.unit = unit;
+            this.points = points;
+            this.latest = latest;
+            this.max = max;
+        }
+
+        static TrendSeries of(String title, String unit, List<BuildstashTrendRecord> records, ToDoubleFunction<BuildstashTrendRecord> value) {
+            double max = 0;
+            for (BuildstashTrendRecord record : records) {
+                max = Math.max(max, value.applyAsDouble(record));
+            }
+
+            StringBuilder points = new StringBuilder();
+            int count = records.size();
+            for (int i = 0; i < count; i++) {
+                double x = count == 1 ? CHART_WIDTH / 2.0 : (double) i * CHART_WIDTH / (count - 1);
+                double y = max <= 0 ? CHART_HEIGHT : CHART_HEIGHT - (value.applyAsDouble(records.get(i)) / max) * CHART_HEIGHT;
+                if (points.length() > 0) {
+                    points.append(' ');
+                }
+                points.append(String.format(Locale.ROOT, "%.1f,%.1f", x, y));
+            }
+
+            return new TrendSeries(title, unit, points.toString(), value.applyAsDouble(records.get(count - 1)), max);
+        }
+
+        public String getTitle() { return title; }
+        public String getUnit() { return unit; }
+        public String getPoints() { return points; }
+        public String getLatest() { return String.format(Locale.ROOT, "%.2f", latest); }
+        public String getMax() { return String.format(Locale.ROOT, "%.2f", max); }
+    }
+
+    /**
+     * Adds the trend action to any job that has recorded Buildstash uploads.
+     */
+    @Extension
+    public static class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @NonNull
+        @Override
+        public Collection<? extends Action> createFor(@NonNull Job target) {
+            if (BuildstashMetricsStore.ifExists(target) == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new BuildstashTrendAction(target));
+        }
+    }
+}
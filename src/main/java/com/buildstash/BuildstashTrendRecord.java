@@ -0,0 +1,104 @@
+package com.buildstash;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import hudson.model.Run;
+
+/**
+ * Summary of a single successful upload, as stored in the job-level metrics history.
+ * Kept deliberately small so trend charts never need to load build records.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BuildstashTrendRecord {
+
+    @JsonProperty("build_number")
+    private int buildNumber;
+
+    private long timestamp;
+
+    private String platform;
+
+    private String stream;
+
+    @JsonProperty("primary_file_bytes")
+    private long primaryFileBytes;
+
+    @JsonProperty("expansion_file_bytes")
+    private long expansionFileBytes;
+
+    @JsonProperty("transfer_millis")
+    private long transferMillis;
+
+    @JsonProperty("verify_millis")
+    private long verifyMillis;
+
+    @JsonProperty("total_millis")
+    private long totalMillis;
+
+    // Default constructor for JSON deserialization
+    public BuildstashTrendRecord() {}
+
+    /**
+     * Creates a record from a completed upload.
+     */
+    public static BuildstashTrendRecord of(Run<?, ?> run, BuildstashUploadRequest request, UploadMetrics metrics) {
+        BuildstashTrendRecord record = new BuildstashTrendRecord();
+        record.buildNumber = run.getNumber();
+        record.timestamp = System.currentTimeMillis();
+        record.platform = request.getPlatform();
+        record.stream = request.getStream();
+        record.primaryFileBytes = metrics.getPrimaryFileBytes();
+        record.expansionFileBytes = metrics.getExpansionFileBytes();
+        record.transferMillis = metrics.getTransferMillis();
+        record.verifyMillis = metrics.getVerifyMillis();
+        record.totalMillis = metrics.getTotalMillis();
+        return record;
+    }
+
+    // Getters and Setters
+    public int getBuildNumber() { return buildNumber; }
+    public void setBuildNumber(int buildNumber) { this.buildNumber = buildNumber; }
+
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+
+    public String getPlatform() { return platform; }
+    public void setPlatform(String platform) { this.platform = platform; }
+
+    public String getStream() { return stream; }
+    public void setStream(String stream) { this.stream = stream; }
+
+    public long getPrimaryFileBytes() { return primaryFileBytes; }
+    public void setPrimaryFileBytes(long primaryFileBytes) { this.primaryFileBytes = primaryFileBytes; }
+
+    public long getExpansionFileBytes() { return expansionFileBytes; }
+    public void setExpansionFileBytes(long expansionFileBytes) { this.expansionFileBytes = expansionFileBytes; }
+
+    public long getTransferMillis() { return transferMillis; }
+    public void setTransferMillis(long transferMillis) { this.transferMillis = transferMillis; }
+
+    public long getVerifyMillis() { return verifyMillis; }
+    public void setVerifyMillis(long verifyMillis) { this.verifyMillis = verifyMillis; }
+
+    public long getTotalMillis() { return totalMillis; }
+    public void setTotalMillis(long totalMillis) { this.totalMillis = totalMillis; }
+
+    /**
+     * Get the total number of bytes uploaded.
+     * @return Primary plus expansion file bytes
+     */
+    public long totalBytes() {
+        return primaryFileBytes + expansionFileBytes;
+    }
+
+    /**
+     * Get the effective transfer throughput.
+     * @return Throughput in MB/s, or 0 if no transfer time was recorded
+     */
+    public double megabytesPerSecond() {
+        if (transferMillis <= 0) {
+            return 0;
+        }
+        return (totalBytes() / (1024.0 * 1024.0)) / (transferMillis / 1000.0);
+    }
+}
@@ -0,0 +1,16 @@
+package com.buildstash;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the Buildstash API cannot be reached or reports a server error before anything
+ * has been uploaded, so the whole upload can safely be retried later.
+ */
+public class BuildstashUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BuildstashUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,14 +1,24 @@
 package com.buildstash;
 
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.FilePath;
+import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import jenkins.model.Jenkins;
+import org.springframework.security.core.Authentication;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 /**
@@ -67,8 +77,9 @@ public class BuildstashUploadHelper {
     /**
      * Creates a BuildstashUploadRequest from the provided parameters.
      * All string parameters should already be expanded (environment variables resolved).
+     * CI information is taken from the upload context snapshot.
      */
-    public static BuildstashUploadRequest createUploadRequest(FilePath workspace, Run<?, ?> build,
+    public static BuildstashUploadRequest createUploadRequest(FilePath workspace, UploadContext context,
                                                              String structure, String primaryFilePath, String expansionFilePath,
                                                              String versionComponent1Major, String versionComponent2Minor,
                                                              String versionComponent3Patch, String versionComponentExtra,
@@ -111,11 +122,12 @@ public class BuildstashUploadHelper {
         }
 
         // Set CI information automatically from Jenkins context
+        Run<?, ?> build = context.getRun();
         request.setCiPipeline(build.getParent().getDisplayName());
         request.setCiRunId(String.valueOf(build.getNumber()));
-        request.setCiRunUrl(getBuildUrl(build));
-        request.setCiPipelineUrl(getProjectUrl(build));
-        request.setCiBuildDuration(formatBuildDuration(getBuildDuration(build)));
+        request.setCiRunUrl(context.getBuildUrl());
+        request.setCiPipelineUrl(context.getProjectUrl());
+        request.setCiBuildDuration(formatBuildDuration(context.getBuildDurationMillis()));
         request.setSource("jenkins");
 
         // Set version control information (only if provided, to allow auto-detection)
@@ -152,27 +164,95 @@ public class BuildstashUploadHelper {
     }
 
     /**
-     * Gets the full URL to the build run status summary.
+     * Records the final processing state of a build on the run's Buildstash action.
      */
-    public static String getBuildUrl(Run<?, ?> build) {
-        Jenkins jenkins = Jenkins.getInstanceOrNull();
-        if (jenkins != null) {
-            return jenkins.getRootUrl() + build.getUrl();
+    public static void recordProcessingState(Run<?, ?> build, BuildstashUploadResponse status, TaskListener listener) {
+        BuildstashBuildAction action = build.getAction(BuildstashBuildAction.class);
+        if (action == null) {
+            return;
+        }
+        try {
+            action.updateProcessingState(status.getBuildId(), status);
+        } catch (IOException e) {
+            listener.getLogger().println("Warning: failed to save Buildstash processing state: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Converts an upload response to the Map returned by pipeline steps,
+     * so it can be used in pipeline scripts without whitelisting.
+     */
+    public static Map<String, Object> toResultMap(BuildstashUploadResponse response) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("buildId", response.getBuildId());
+        result.put("buildInfoUrl", response.getBuildInfoUrl());
+        result.put("downloadUrl", response.getDownloadUrl());
+        result.put("pendingProcessing", response.isPendingProcessing());
+        result.put("message", response.getMessage());
+        result.put("queued", response.isQueued());
+        result.put("retries", response.getMetrics() != null ? response.getMetrics().getRetries() : 0);
+        return result;
+    }
+
+    /**
+     * Completes a request before upload. Three things run at once: version control detection on
+     * the upload pool, the stat of the referenced files on the agent, and the service's API
+     * connection warm-up.
+     * Returns once the request is ready for the upload URL request.
+     */
+    public static void prepareRequest(UploadContext context, BuildstashUploadRequest request,
+                                      BuildstashUploadService uploadService) throws IOException, InterruptedException {
+        uploadService.warmUp();
+
+        Authentication auth = Jenkins.getAuthentication2();
+        CompletableFuture<Void> detection = CompletableFuture.runAsync(() -> {
+            try (ACLContext ignored = ACL.as2(auth)) {
+                VersionControlDetector.populateVersionControlInfo(context, request);
+            }
+        }, BuildstashExecutors.uploads());
+
+        // Resolve file metadata in one agent call while detection runs; the result is cached on the request
+        try {
+            request.getFileStats();
+        } finally {
+            try {
+                detection.get();
+            } catch (ExecutionException e) {
+                // Detection logs and swallows its own failures, so this is unexpected
+                throw new IOException("Version control detection failed", e.getCause());
+            }
         }
-        // Fallback to relative URL if root URL is not available
-        return build.getUrl();
     }
 
     /**
-     * Gets the full URL to the Jenkins project/job root.
+     * Checks the artifact size against the configured limits before anything is uploaded.
+     * The baseline for growth limits is the last recorded upload to the same stream and platform.
+     * All string parameters should already be expanded.
+     * @throws AbortException if a limit is exceeded and the configured result is FAILURE
      */
-    public static String getProjectUrl(Run<?, ?> build) {
-        Jenkins jenkins = Jenkins.getInstanceOrNull();
-        if (jenkins != null) {
-            return jenkins.getRootUrl() + build.getParent().getUrl();
+    public static void enforceSizeLimits(Run<?, ?> build, BuildstashUploadRequest request, String maxSizeMb,
+                                         String maxSizeGrowthPercent, String sizeLimitResult,
+                                         TaskListener listener) throws IOException, InterruptedException {
+        ArtifactSizeGate gate = ArtifactSizeGate.fromParameters(maxSizeMb, maxSizeGrowthPercent);
+        if (gate == null) {
+            return;
+        }
+
+        long totalBytes = request.computeTotalFileSizeBytes();
+        BuildstashTrendRecord baseline = ArtifactSizeGate.findBaseline(
+                BuildstashMetricsStore.recordsOf(build.getParent()), request.getStream(), request.getPlatform());
+        String violation = gate.check(totalBytes, baseline);
+        if (violation == null) {
+            listener.getLogger().println("Artifact size " + totalBytes + " bytes is within configured limits");
+            return;
+        }
+
+        if ("UNSTABLE".equalsIgnoreCase(sizeLimitResult)) {
+            listener.getLogger().println("Warning: " + violation + ". Marking build as unstable.");
+            build.setResult(Result.UNSTABLE);
+            return;
         }
-        // Fallback to relative URL if root URL is not available
-        return build.getParent().getUrl();
+        throw new AbortException(violation + ". Upload aborted.");
     }
 
     /**
@@ -202,15 +282,78 @@ public class BuildstashUploadHelper {
         return String.format("%02d:%02d:%02d", hours, minutes, seconds);
     }
 
+    /**
+     * Uploads a request. If Buildstash is unreachable before anything was uploaded and queueing is enabled,
+     * the upload is queued in the {@link BuildstashOutbox} instead of failing.
+     * All string parameters should already be expanded.
+     * @return The upload response, or a queued record that is replaced on the run once the outbox delivers the upload
+     */
+    public static BuildstashUploadResponse uploadOrQueue(Run<?, ?> build, BuildstashUploadRequest request,
+                                                         BuildstashUploadService uploadService, String apiKey,
+                                                         BuildstashTimeouts timeouts, boolean queueWhenUnavailable,
+                                                         TaskListener listener) throws Exception {
+        try {
+            return uploadService.upload(request);
+        } catch (BuildstashUnavailableException e) {
+            if (!queueWhenUnavailable) {
+                throw e;
+            }
+            listener.getLogger().println("Buildstash is unreachable (" + e.getMessage() + "), queueing the upload for later delivery");
+            return BuildstashOutbox.enqueue(build, request, apiKey, timeouts, listener);
+        }
+    }
+
     /**
      * Logs the upload results to the task listener.
      */
     public static void logResults(TaskListener listener, BuildstashUploadResponse response) {
+        if (response.isQueued()) {
+            listener.getLogger().println(response.getMessage() + " (outbox entry " + response.getOutboxId() + ")");
+            return;
+        }
         listener.getLogger().println("Buildstash upload completed successfully!");
         listener.getLogger().println("Build ID: " + response.getBuildId());
         listener.getLogger().println("Build Info URL: " + response.getBuildInfoUrl());
         listener.getLogger().println("Download URL: " + response.getDownloadUrl());
         listener.getLogger().println("Pending Processing: " + response.isPendingProcessing());
+
+        UploadMetrics metrics = response.getMetrics();
+        if (metrics != null) {
+            listener.getLogger().println(String.format(Locale.ROOT,
+                    "Uploaded %d bytes in %.1fs (%.2f MB/s), verify call took %.1fs (excluding server-side processing), %d retried attempts",
+                    metrics.getTotalBytes(), metrics.getTotalMillis() / 1000.0,
+                    metrics.getMegabytesPerSecond(), metrics.getVerifyMillis() / 1000.0, metrics.getRetries()));
+        }
+    }
+
+    /**
+     * Stores the upload results on the build for UI display, and appends the upload
+     * metrics to the job-level history used for trend charts.
+     */
+    public static void recordResults(Run<?, ?> build, BuildstashUploadRequest request, BuildstashUploadResponse response, TaskListener listener) {
+        response.setPlatform(request.getPlatform());
+        response.setStream(request.getStream());
+
+        // Parallel branches share one action; each result is appended to the run's upload file
+        try {
+            BuildstashBuildAction action = BuildstashBuildAction.getOrCreate(build);
+            // Uploads delivered from the outbox replace their queued record
+            if (response.getOutboxId() == null || !action.completeQueued(response.getOutboxId(), response)) {
+                action.addResponse(response);
+            }
+        } catch (IOException e) {
+            listener.getLogger().println("Warning: failed to record Buildstash upload result: " + e.getMessage());
+        }
+
+        UploadMetrics metrics = response.getMetrics();
+        if (metrics != null) {
+            try {
+                BuildstashMetricsStore.forJob(build.getParent()).append(BuildstashTrendRecord.of(build, request, metrics));
+            } catch (IOException e) {
+                // Trend history is informational only, don't fail the upload over it
+                listener.getLogger().println("Warning: failed to record Buildstash upload metrics: " + e.getMessage());
+            }
+        }
     }
 }
 
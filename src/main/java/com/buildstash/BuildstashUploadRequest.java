@@ -1,8 +1,15 @@
 package com.buildstash;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import hudson.FilePath;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 
@@ -40,16 +47,22 @@ public class BuildstashUploadRequest {
     private String stream;
     private String notes;
     private FilePath workspace;
+    /** Fixed idempotency key, e.g. derived from the content of outbox copies; kept with the outbox entry. */
+    private String idempotencyKey;
+    /** Overrides the workspace as the source of the files, e.g. for uploads from archived artifacts. */
+    private transient UploadFileSource fileSource;
+    /** Metadata of the referenced files, resolved in one agent call and reused until a path changes. */
+    private transient Map<String, FileStat> fileStats;
 
     // Getters and Setters
     public String getStructure() { return structure; }
-    public void setStructure(String structure) { this.structure = structure; }
+    public void setStructure(String structure) { this.structure = structure; this.fileStats = null; }
 
     public String getPrimaryFilePath() { return primaryFilePath; }
-    public void setPrimaryFilePath(String primaryFilePath) { this.primaryFilePath = primaryFilePath; }
+    public void setPrimaryFilePath(String primaryFilePath) { this.primaryFilePath = primaryFilePath; this.fileStats = null; }
 
     public String getExpansionFilePath() { return expansionFilePath; }
-    public void setExpansionFilePath(String expansionFilePath) { this.expansionFilePath = expansionFilePath; }
+    public void setExpansionFilePath(String expansionFilePath) { this.expansionFilePath = expansionFilePath; this.fileStats = null; }
 
     public String getVersionComponent1Major() { return versionComponent1Major; }
     public void setVersionComponent1Major(String versionComponent1Major) { this.versionComponent1Major = versionComponent1Major; }
@@ -124,114 +137,218 @@ public class BuildstashUploadRequest {
     public void setNotes(String notes) { this.notes = notes; }
 
     public FilePath getWorkspace() { return workspace; }
-    public void setWorkspace(FilePath workspace) { this.workspace = workspace; }
+    public void setWorkspace(FilePath workspace) { this.workspace = workspace; this.fileStats = null; }
+
+    /**
+     * Gets where the referenced files are read from.
+     * @return The file source, the workspace by default, or null if there is neither
+     */
+    UploadFileSource getFileSource() {
+        if (fileSource != null) {
+            return fileSource;
+        }
+        return workspace != null ? UploadFileSource.of(workspace) : null;
+    }
+
+    void setFileSource(UploadFileSource fileSource) { this.fileSource = fileSource; this.fileStats = null; }
+
+    /**
+     * Gets the metadata of the primary and expansion files referenced by this request.
+     * All files are resolved in a single call to the agent, and the result is cached on this request.
+     * @return Metadata keyed by path, empty if there is no workspace or file source
+     */
+    public Map<String, FileStat> getFileStats() throws IOException, InterruptedException {
+        if (fileStats == null) {
+            List<String> paths = new ArrayList<>();
+            if (primaryFilePath != null) {
+                paths.add(primaryFilePath);
+            }
+            if (hasExpansionFile()) {
+                paths.add(expansionFilePath);
+            }
+            UploadFileSource source = getFileSource();
+            fileStats = source == null || paths.isEmpty() ? Map.of() : source.stat(paths);
+        }
+        return fileStats;
+    }
+
+    /**
+     * Gets the metadata of the primary file.
+     * @return The metadata, or null if there is no primary file path or workspace
+     */
+    public FileStat getPrimaryFileStat() throws IOException, InterruptedException {
+        return primaryFilePath != null ? getFileStats().get(primaryFilePath) : null;
+    }
+
+    /**
+     * Gets the metadata of the expansion file.
+     * @return The metadata, or null if the structure has no expansion file or there is no workspace
+     */
+    public FileStat getExpansionFileStat() throws IOException, InterruptedException {
+        return hasExpansionFile() ? getFileStats().get(expansionFilePath) : null;
+    }
+
+    private boolean hasExpansionFile() {
+        return "file+expansion".equals(structure) && expansionFilePath != null;
+    }
+
+    /**
+     * Gets a key identifying this upload across retries, so a repeated upload URL request
+     * reuses the pending upload instead of creating another one. Unless a key has been set, it is
+     * derived from the run, version, stream and platform fields and the path, size and modification
+     * time of each file, which needs no extra read of the files.
+     * @return Hex encoded key, or null if the primary file doesn't exist
+     */
+    public String getIdempotencyKey() throws IOException, InterruptedException {
+        if (idempotencyKey != null) {
+            return idempotencyKey;
+        }
+        FileStat primaryFile = getPrimaryFileStat();
+        if (primaryFile == null || !primaryFile.exists()) {
+            return null;
+        }
+        FileStat expansionFile = getExpansionFileStat();
+        boolean expansion = expansionFile != null && expansionFile.exists();
+        return computeIdempotencyKey(primaryFile.getPath(), String.valueOf(primaryFile.getSize()),
+                String.valueOf(primaryFile.getLastModified()),
+                expansion ? expansionFile.getPath() : null,
+                expansion ? String.valueOf(expansionFile.getSize()) : null,
+                expansion ? String.valueOf(expansionFile.getLastModified()) : null);
+    }
+
+    /**
+     * Sets a fixed idempotency key, for a key that must stay the same when the files move.
+     */
+    void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+
+    /**
+     * Derives an idempotency key from the run, version, stream and platform fields and the given file details.
+     */
+    String computeIdempotencyKey(String... fileDetails) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        List<String> parts = new ArrayList<>(Arrays.asList(ciPipeline, ciRunId, ciRunUrl, platform, stream,
+                versionComponent1Major, versionComponent2Minor, versionComponent3Patch, versionComponentExtra,
+                versionComponentMeta, customBuildNumber));
+        parts.addAll(Arrays.asList(fileDetails));
+        for (String part : parts) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Computes the combined size of the primary and expansion files referenced by this request.
+     * Files that do not exist are not counted.
+     */
+    public long computeTotalFileSizeBytes() throws IOException, InterruptedException {
+        long total = 0;
+        FileStat primaryFile = getPrimaryFileStat();
+        if (primaryFile != null && primaryFile.exists()) {
+            total += primaryFile.getSize();
+        }
+        FileStat expansionFile = getExpansionFileStat();
+        if (expansionFile != null && expansionFile.exists()) {
+            total += expansionFile.getSize();
+        }
+        return total;
+    }
 
     /**
      * Converts this request to a Map for JSON serialization.
      * This method builds the payload that matches the GitHub Actions implementation.
      */
     public Map<String, Object> toMap() throws Exception {
-        Map<String, Object> payload = new HashMap<>();
+        return BuildstashJson.MAP.readValue(BuildstashJson.toBytes(this::writeFields));
+    }
 
+    /**
+     * Writes the upload request payload, matching the GitHub Actions implementation, with a streaming generator.
+     */
+    void writeFields(JsonGenerator json) throws IOException, InterruptedException {
         // Basic structure and file info
-        payload.put("structure", structure);
-        
+        json.writeStringField("structure", structure);
+
         // Primary file info
-        if (primaryFilePath != null && workspace != null) {
-            FilePath primaryFile = workspace.child(primaryFilePath);
-            if (primaryFile.exists()) {
-                Map<String, Object> primaryFileInfo = new HashMap<>();
-                primaryFileInfo.put("filename", primaryFile.getName());
-                primaryFileInfo.put("size_bytes", primaryFile.length());
-                payload.put("primary_file", primaryFileInfo);
-            }
+        FileStat primaryFile = getPrimaryFileStat();
+        if (primaryFile != null && primaryFile.exists()) {
+            json.writeObjectFieldStart("primary_file");
+            writeFileInfo(json, primaryFile);
+            json.writeEndObject();
         }
 
         // Expansion file info
-        if (structure != null && structure.equals("file+expansion") && expansionFilePath != null && workspace != null) {
-            FilePath expansionFile = workspace.child(expansionFilePath);
-            if (expansionFile.exists()) {
-                Map<String, Object> expansionFileInfo = new HashMap<>();
-                expansionFileInfo.put("filename", expansionFile.getName());
-                expansionFileInfo.put("size_bytes", expansionFile.length());
-                payload.put("expansion_files", List.of(expansionFileInfo));
-            }
+        FileStat expansionFile = getExpansionFileStat();
+        if (expansionFile != null && expansionFile.exists()) {
+            json.writeArrayFieldStart("expansion_files");
+            json.writeStartObject();
+            writeFileInfo(json, expansionFile);
+            json.writeEndObject();
+            json.writeEndArray();
         }
 
         // Version components
-        payload.put("version_component_1_major", versionComponent1Major);
-        payload.put("version_component_2_minor", versionComponent2Minor);
-        payload.put("version_component_3_patch", versionComponent3Patch);
-        if (versionComponentExtra != null) {
-            payload.put("version_component_extra", versionComponentExtra);
-        }
-        if (versionComponentMeta != null) {
-            payload.put("version_component_meta", versionComponentMeta);
-        }
-        if (customBuildNumber != null) {
-            payload.put("custom_build_number", customBuildNumber);
-        }
+        json.writeStringField("version_component_1_major", versionComponent1Major);
+        json.writeStringField("version_component_2_minor", versionComponent2Minor);
+        json.writeStringField("version_component_3_patch", versionComponent3Patch);
+        writeOptionalField(json, "version_component_extra", versionComponentExtra);
+        writeOptionalField(json, "version_component_meta", versionComponentMeta);
+        writeOptionalField(json, "custom_build_number", customBuildNumber);
 
         // Labels and architectures
-        if (labels != null && !labels.isEmpty()) {
-            payload.put("labels", labels);
-        }
-        if (architectures != null && !architectures.isEmpty()) {
-            payload.put("architectures", architectures);
-        }
+        writeOptionalArray(json, "labels", labels);
+        writeOptionalArray(json, "architectures", architectures);
 
         // Source
-        payload.put("source", source);
+        json.writeStringField("source", source);
 
         // CI information
-        if (ciPipeline != null) {
-            payload.put("ci_pipeline", ciPipeline);
-        }
-        if (ciRunId != null) {
-            payload.put("ci_run_id", ciRunId);
-        }
-        if (ciRunUrl != null) {
-            payload.put("ci_run_url", ciRunUrl);
-        }
-        if (ciPipelineUrl != null) {
-            payload.put("ci_pipeline_url", ciPipelineUrl);
-        }
-        if (ciBuildDuration != null) {
-            payload.put("ci_build_duration", ciBuildDuration);
-        }
+        writeOptionalField(json, "ci_pipeline", ciPipeline);
+        writeOptionalField(json, "ci_run_id", ciRunId);
+        writeOptionalField(json, "ci_run_url", ciRunUrl);
+        writeOptionalField(json, "ci_pipeline_url", ciPipelineUrl);
+        writeOptionalField(json, "ci_build_duration", ciBuildDuration);
 
         // Version control information
-        if (vcHostType != null) {
-            payload.put("vc_host_type", vcHostType);
-        }
-        if (vcHost != null) {
-            payload.put("vc_host", vcHost);
-        }
-        if (vcRepoName != null) {
-            payload.put("vc_repo_name", vcRepoName);
-        }
-        if (vcRepoUrl != null) {
-            payload.put("vc_repo_url", vcRepoUrl);
-        }
-        if (vcBranch != null) {
-            payload.put("vc_branch", vcBranch);
-        }
-        if (vcCommitSha != null) {
-            payload.put("vc_commit_sha", vcCommitSha);
-        }
-        if (vcCommitUrl != null) {
-            payload.put("vc_commit_url", vcCommitUrl);
-        }
+        writeOptionalField(json, "vc_host_type", vcHostType);
+        writeOptionalField(json, "vc_host", vcHost);
+        writeOptionalField(json, "vc_repo_name", vcRepoName);
+        writeOptionalField(json, "vc_repo_url", vcRepoUrl);
+        writeOptionalField(json, "vc_branch", vcBranch);
+        writeOptionalField(json, "vc_commit_sha", vcCommitSha);
+        writeOptionalField(json, "vc_commit_url", vcCommitUrl);
 
         // Platform and stream
-        payload.put("platform", platform);
-        payload.put("stream", stream);
+        json.writeStringField("platform", platform);
+        json.writeStringField("stream", stream);
 
         // Notes
-        if (notes != null) {
-            payload.put("notes", notes);
+        writeOptionalField(json, "notes", notes);
+    }
+
+    private static void writeFileInfo(JsonGenerator json, FileStat file) throws IOException {
+        json.writeStringField("filename", file.getName());
+        json.writeNumberField("size_bytes", file.getSize());
+    }
+
+    private static void writeOptionalField(JsonGenerator json, String name, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(name, value);
         }
+    }
 
-        return payload;
+    private static void writeOptionalArray(JsonGenerator json, String name, List<String> values) throws IOException {
+        if (values != null && !values.isEmpty()) {
+            json.writeArrayFieldStart(name);
+            for (String value : values) {
+                json.writeString(value);
+            }
+            json.writeEndArray();
+        }
     }
-} 
\ No newline at end of file
+}
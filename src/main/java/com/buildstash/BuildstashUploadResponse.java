@@ -1,5 +1,6 @@
 package com.buildstash;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -30,6 +31,22 @@ public class BuildstashUploadResponse implements Serializable {
     
     private BuildInfo build;
 
+    private UploadMetrics metrics;
+
+    /** Platform requested by the upload, used when the API response doesn't include one. */
+    private String platform;
+
+    /** Stream the build was uploaded to. */
+    private String stream;
+
+    /** Outbox entry the upload was queued in when Buildstash was unreachable. */
+    @JsonProperty("outbox_id")
+    private String outboxId;
+
+    /** Whether delivery from the outbox failed for good, so the upload is no longer queued. */
+    @JsonProperty("delivery_failed")
+    private boolean deliveryFailed;
+
     // Default constructor for JSON deserialization
     public BuildstashUploadResponse() {}
 
@@ -59,6 +76,29 @@ public class BuildstashUploadResponse implements Serializable {
 
     public BuildInfo getBuild() { return build; }
     public void setBuild(BuildInfo build) { this.build = build; }
+
+    public UploadMetrics getMetrics() { return metrics; }
+    public void setMetrics(UploadMetrics metrics) { this.metrics = metrics; }
+
+    public String getPlatform() { return platform; }
+    public void setPlatform(String platform) { this.platform = platform; }
+
+    public String getStream() { return stream; }
+    public void setStream(String stream) { this.stream = stream; }
+
+    public String getOutboxId() { return outboxId; }
+    public void setOutboxId(String outboxId) { this.outboxId = outboxId; }
+
+    public boolean isDeliveryFailed() { return deliveryFailed; }
+    public void setDeliveryFailed(boolean deliveryFailed) { this.deliveryFailed = deliveryFailed; }
+
+    /**
+     * Whether the upload is still waiting in the outbox for delivery.
+     */
+    @JsonIgnore
+    public boolean isQueued() {
+        return outboxId != null && buildId == null && !deliveryFailed;
+    }
     
     /**
      * Get the platform short name from the build object.
@@ -68,6 +108,25 @@ public class BuildstashUploadResponse implements Serializable {
         return build != null && build.getPlatform() != null ? build.getPlatform().getShortName() : null;
     }
 
+    /**
+     * Get the platform name for display and filtering: the short name reported by Buildstash, or else the requested platform.
+     * @return Platform name, or null if not available
+     */
+    @JsonIgnore
+    public String getPlatformName() {
+        String shortName = getPlatformShortName();
+        return shortName != null ? shortName : platform;
+    }
+
+    /**
+     * Get the number of bytes uploaded.
+     * @return Total bytes, or 0 if no metrics were recorded
+     */
+    @JsonIgnore
+    public long getTotalBytes() {
+        return metrics != null ? metrics.getTotalBytes() : 0;
+    }
+
     /**
      * Nested class for build information from the API response.
      */
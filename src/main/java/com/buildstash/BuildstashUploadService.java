@@ -1,20 +1,32 @@
 package com.buildstash;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import hudson.FilePath;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.AbortException;
 import hudson.ProxyConfiguration;
 import hudson.model.TaskListener;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
 import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpResponse.BodyHandlers;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service class for uploading files to Buildstash.
@@ -22,137 +34,288 @@ import java.util.Map;
  */
 public class BuildstashUploadService {
 
-    private static final String API_BASE_URL = "https://app.buildstash.com/api/v1";
-    private static final String UPLOAD_REQUEST_ENDPOINT = API_BASE_URL + "/upload/request";
-    private static final String UPLOAD_VERIFY_ENDPOINT = API_BASE_URL + "/upload/verify";
-    private static final String MULTIPART_REQUEST_ENDPOINT = API_BASE_URL + "/upload/request/multipart";
-    private static final String MULTIPART_EXPANSION_ENDPOINT = API_BASE_URL + "/upload/request/multipart/expansion";
+    private static final String DEFAULT_API_BASE_URL = "https://app.buildstash.com/api/v1";
+
+    /** Base URL of the Buildstash API, overridable for testing or self-hosted proxies. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    static /* non-final for script console */ String API_BASE_URL = SystemProperties.getString(
+            BuildstashUploadService.class.getName() + ".apiBaseUrl", DEFAULT_API_BASE_URL);
+
+    private static final String UPLOAD_REQUEST_PATH = "/upload/request";
+    private static final String UPLOAD_VERIFY_PATH = "/upload/verify";
+    private static final String MULTIPART_REQUEST_PATH = "/upload/request/multipart";
+    private static final String MULTIPART_EXPANSION_PATH = "/upload/request/multipart/expansion";
+    private static final String UPLOAD_ABORT_PATH = "/upload/abort";
+    private static final String BUILD_STATUS_PATH = "/build/";
+
+    /** Backoff between build status polls while waiting for server-side processing. */
+    private static final Backoff PROCESSING_POLL_BACKOFF = new Backoff(5_000, 60_000, 2.0, 0.2);
 
     private final String apiKey;
+    private final String apiBaseUrl = API_BASE_URL;
     private final TaskListener listener;
-    private final ObjectMapper objectMapper;
     private final HttpClient httpClient;
+    private final BuildstashTimeouts timeouts;
+    private final ApiRateLimiter rateLimiter;
+    private final Set<CompletableFuture<?>> inFlightRequests = ConcurrentHashMap.newKeySet();
+    private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private volatile boolean cancelled;
+    private volatile Duration uploadDeadline;
+    private volatile long deadlineNanos;
 
     public BuildstashUploadService(String apiKey, TaskListener listener) {
+        this(apiKey, listener, null);
+    }
+
+    /**
+     * @param timeouts Per-step timeouts, unset values fall back to the global configuration. May be null.
+     */
+    public BuildstashUploadService(String apiKey, TaskListener listener, BuildstashTimeouts timeouts) {
         this.apiKey = apiKey;
         this.listener = listener;
-        this.objectMapper = new ObjectMapper();
+        this.timeouts = BuildstashGlobalConfiguration.resolveTimeouts(timeouts);
+        this.rateLimiter = ApiRateLimiter.forApiKey(apiKey);
         // Use ProxyConfiguration to get a preconfigured HttpClient that supports Jenkins proxy settings
         this.httpClient = ProxyConfiguration.newHttpClientBuilder()
                 .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(this.timeouts.connectTimeout())
+                .build();
+    }
+
+    void setRetryPolicy(RetryPolicy retryPolicy) { this.retryPolicy = retryPolicy; }
+
+    /**
+     * Opens a connection to the Buildstash API in the background, so the TLS handshake overlaps
+     * with preparing the request instead of delaying the upload URL request.
+     * Failures are ignored; the upload request will report any real connection problem.
+     */
+    public void warmUp() {
+        if (cancelled) {
+            return;
+        }
+        HttpRequest httpRequest = HttpRequest.newBuilder()
+                .uri(URI.create(apiBaseUrl))
+                .timeout(timeouts.connectTimeout())
+                .method("HEAD", BodyPublishers.noBody())
                 .build();
+        CompletableFuture<HttpResponse<Void>> future = httpClient.sendAsync(httpRequest, BodyHandlers.discarding());
+        inFlightRequests.add(future);
+        future.whenComplete((response, error) -> inFlightRequests.remove(future));
     }
 
     public BuildstashUploadResponse upload(BuildstashUploadRequest request) throws Exception {
+        UploadMetrics metrics = new UploadMetrics();
+        long uploadStart = System.nanoTime();
+        uploadDeadline = timeouts.uploadDeadline();
+        if (uploadDeadline != null) {
+            deadlineNanos = uploadStart + uploadDeadline.toNanos();
+        }
+
         // Step 1: Request upload URLs
         listener.getLogger().println("Requesting upload URLs from Buildstash...");
-        UploadRequestResponse uploadRequestResponse = requestUploadUrls(request);
+        // The idempotency key makes the request safe to repeat, as a retry reuses the same pending upload
+        String idempotencyKey = request.getIdempotencyKey();
+        UploadRequestResponse uploadRequestResponse = withRetries("Upload URL request", metrics,
+                () -> requestUploadUrls(request, idempotencyKey));
+        long transferStart = System.nanoTime();
+        metrics.setRequestMillis(elapsedMillis(uploadStart, transferStart));
+
+        String pendingUploadId = uploadRequestResponse.getPendingUploadId();
+        BuildstashPendingUploads.register(pendingUploadId, apiKey);
+        try {
+            BuildstashUploadResponse response = transferAndVerify(request, uploadRequestResponse, metrics, uploadStart, transferStart);
+            BuildstashPendingUploads.complete(pendingUploadId);
+            return response;
+        } catch (InterruptedException | CancellationException | BuildstashTimeoutException e) {
+            // Don't leave an orphaned multipart upload behind on storage
+            if (abortPendingUpload(pendingUploadId)) {
+                BuildstashPendingUploads.complete(pendingUploadId);
+            }
+            throw e;
+        } finally {
+            // Anything not completed by now is left to the sweeper
+            BuildstashPendingUploads.release(pendingUploadId);
+        }
+    }
 
+    private BuildstashUploadResponse transferAndVerify(BuildstashUploadRequest request, UploadRequestResponse uploadRequestResponse,
+                                                       UploadMetrics metrics, long uploadStart, long transferStart) throws Exception {
         // Step 2: Upload files
         listener.getLogger().println("Uploading files to Buildstash...");
         List<MultipartChunk> primaryFileParts = null;
         List<MultipartChunk> expansionFileParts = null;
         
+        // File sizes were resolved in one agent call when the upload was requested
+        UploadFileSource source = request.getFileSource();
+        long primaryFileSize = requireExistingFile(request.getPrimaryFileStat()).getSize();
+
         // Upload primary file
         if (uploadRequestResponse.getPrimaryFile().isChunkedUpload()) {
             listener.getLogger().println("Uploading primary file using chunked upload...");
             primaryFileParts = uploadChunkedFile(
-                request.getWorkspace().child(request.getPrimaryFilePath()),
+                source,
+                request.getPrimaryFilePath(),
+                primaryFileSize,
                 uploadRequestResponse.getPendingUploadId(),
                 uploadRequestResponse.getPrimaryFile(),
-                false
+                false,
+                metrics
             );
         } else {
             listener.getLogger().println("Uploading primary file using direct upload...");
-            uploadDirectFile(
-                request.getWorkspace().child(request.getPrimaryFilePath()),
-                uploadRequestResponse.getPrimaryFile().getPresignedData()
-            );
+            withRetries("Primary file upload", metrics, () -> {
+                uploadDirectFile(
+                    source,
+                    request.getPrimaryFilePath(),
+                    primaryFileSize,
+                    uploadRequestResponse.getPrimaryFile().getPresignedData(),
+                    false,
+                    metrics
+                );
+                return null;
+            });
         }
 
         // Upload expansion file if present
         if (request.getExpansionFilePath() != null && uploadRequestResponse.getExpansionFiles() != null && !uploadRequestResponse.getExpansionFiles().isEmpty()) {
             FileUploadInfo expansionFile = uploadRequestResponse.getExpansionFiles().get(0);
+            long expansionFileSize = requireExistingFile(request.getExpansionFileStat()).getSize();
             if (expansionFile.isChunkedUpload()) {
                 listener.getLogger().println("Uploading expansion file using chunked upload...");
                 expansionFileParts = uploadChunkedFile(
-                    request.getWorkspace().child(request.getExpansionFilePath()),
+                    source,
+                    request.getExpansionFilePath(),
+                    expansionFileSize,
                     uploadRequestResponse.getPendingUploadId(),
                     expansionFile,
-                    true
+                    true,
+                    metrics
                 );
             } else {
                 listener.getLogger().println("Uploading expansion file using direct upload...");
-                uploadDirectFile(
-                    request.getWorkspace().child(request.getExpansionFilePath()),
-                    expansionFile.getPresignedData()
-                );
+                withRetries("Expansion file upload", metrics, () -> {
+                    uploadDirectFile(
+                        source,
+                        request.getExpansionFilePath(),
+                        expansionFileSize,
+                        expansionFile.getPresignedData(),
+                        true,
+                        metrics
+                    );
+                    return null;
+                });
             }
         }
 
         // Step 3: Verify upload
+        long verifyStart = System.nanoTime();
+        metrics.setTransferMillis(elapsedMillis(transferStart, verifyStart));
         listener.getLogger().println("Verifying upload...");
-        return verifyUpload(uploadRequestResponse.getPendingUploadId(), primaryFileParts, expansionFileParts);
+        List<MultipartChunk> verifiedPrimaryParts = primaryFileParts;
+        List<MultipartChunk> verifiedExpansionParts = expansionFileParts;
+        BuildstashUploadResponse response = withRetries("Upload verification", metrics,
+                () -> verifyUpload(uploadRequestResponse.getPendingUploadId(), verifiedPrimaryParts, verifiedExpansionParts));
+        long uploadEnd = System.nanoTime();
+        metrics.setVerifyMillis(elapsedMillis(verifyStart, uploadEnd));
+        metrics.setTotalMillis(elapsedMillis(uploadStart, uploadEnd));
+        response.setMetrics(metrics);
+        return response;
     }
 
-    private UploadRequestResponse requestUploadUrls(BuildstashUploadRequest request) throws Exception {
-        // Build request payload
-        Map<String, Object> payload = request.toMap();
-        String jsonPayload = objectMapper.writeValueAsString(payload);
+    private URI endpoint(String path) {
+        return URI.create(apiBaseUrl + path);
+    }
 
-        HttpRequest httpRequest = HttpRequest.newBuilder()
-                .uri(URI.create(UPLOAD_REQUEST_ENDPOINT))
+    private static FileStat requireExistingFile(FileStat fileStat) throws IOException {
+        if (fileStat == null || !fileStat.exists()) {
+            throw new IOException("File not found: " + (fileStat != null ? fileStat.getPath() : null));
+        }
+        return fileStat;
+    }
+
+    private static long elapsedMillis(long startNanos, long endNanos) {
+        return (endNanos - startNanos) / 1_000_000L;
+    }
+
+    private UploadRequestResponse requestUploadUrls(BuildstashUploadRequest request, String idempotencyKey) throws Exception {
+        // Build request payload
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(endpoint(UPLOAD_REQUEST_PATH))
                 .header("Authorization", "Bearer " + apiKey)
                 .header("Content-Type", "application/json")
-                .POST(BodyPublishers.ofString(jsonPayload))
-                .build();
-
-        HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
-        
-        if (response.statusCode() != 200) {
-            String responseBody = response.body();
-            
-            // Log error response for user visibility
-            listener.error("Server returned error: " + response.statusCode());
-            listener.error("Error response: " + responseBody);
-            
-            throw new RuntimeException("Failed to request upload URLs: " + response.statusCode() + " - " + responseBody);
+                .timeout(timeoutFor(timeouts.requestTimeout()))
+                .POST(BuildstashJson.publisher(request::writeFields));
+        if (idempotencyKey != null) {
+            builder.header("Idempotency-Key", idempotencyKey);
         }
+        HttpRequest httpRequest = builder.build();
 
-        String contentType = response.headers().firstValue("content-type").orElse("unknown");
-        String responseBody = response.body();
-        
-        // Check if response is actually JSON
-        if (!contentType.contains("application/json") && !contentType.contains("json")) {
-            throw new RuntimeException("Server returned HTML instead of JSON. This usually indicates an authentication error or the API endpoint is incorrect. Response content-type: " + contentType);
+        HttpResponse<InputStream> response;
+        try {
+            response = send(httpRequest, BodyHandlers.ofInputStream(), UploadPhase.REQUEST);
+        } catch (BuildstashUnavailableException e) {
+            throw e;
+        } catch (IOException e) {
+            // Nothing has been uploaded yet, so the caller may retry the whole upload later
+            throw new BuildstashUnavailableException("Buildstash API is unreachable: " + e.getMessage(), e);
         }
 
-        try {
-            return objectMapper.readValue(responseBody, UploadRequestResponse.class);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse JSON response: " + e.getMessage(), e);
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                String responseBody = BuildstashJson.readText(body);
+
+                // Log error response for user visibility
+                listener.error("Server returned error: " + response.statusCode());
+                listener.error("Error response: " + responseBody);
+
+                if (response.statusCode() >= 500) {
+                    throw new BuildstashUnavailableException("Failed to request upload URLs: " + response.statusCode() + " - " + responseBody, null);
+                }
+                // 408 and 429 are transient too, and left to the retry policy
+                throw new BuildstashHttpException("Failed to request upload URLs: " + response.statusCode() + " - " + responseBody,
+                        response.statusCode());
+            }
+
+            String contentType = response.headers().firstValue("content-type").orElse("unknown");
+
+            // Check if response is actually JSON
+            if (!contentType.contains("application/json") && !contentType.contains("json")) {
+                throw new RuntimeException("Server returned HTML instead of JSON. This usually indicates an authentication error or the API endpoint is incorrect. Response content-type: " + contentType);
+            }
+
+            try {
+                return BuildstashJson.UPLOAD_REQUEST_RESPONSE.readValue(body);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to parse JSON response: " + e.getMessage(), e);
+            }
         }
     }
 
-    private List<MultipartChunk> uploadChunkedFile(FilePath filePath, String pendingUploadId, FileUploadInfo fileInfo, boolean isExpansion) throws Exception {
-        String endpoint = isExpansion ? MULTIPART_EXPANSION_ENDPOINT : MULTIPART_REQUEST_ENDPOINT;
-        long fileSize = filePath.length();
+    private List<MultipartChunk> uploadChunkedFile(UploadFileSource source, String path, long fileSize, String pendingUploadId, FileUploadInfo fileInfo, boolean isExpansion, UploadMetrics metrics) throws Exception {
+        URI endpoint = endpoint(isExpansion ? MULTIPART_EXPANSION_PATH : MULTIPART_REQUEST_PATH);
         int chunkSize = fileInfo.getChunkedPartSizeMb() * 1024 * 1024;
         int numberOfParts = fileInfo.getChunkedNumberParts();
 
         for (int i = 0; i < numberOfParts; i++) {
             int partNumber = i + 1;
-            long chunkStart = i * chunkSize;
-            long chunkEnd = Math.min((i + 1) * chunkSize - 1, fileSize - 1);
+            // Offsets are computed in long, parts beyond 2 GB would overflow int
+            long chunkStart = (long) i * chunkSize;
+            long chunkEnd = Math.min((long) (i + 1) * chunkSize - 1, fileSize - 1);
             long contentLength = chunkEnd - chunkStart + 1;
 
+            checkCancelled();
             listener.getLogger().println("Uploading chunked upload, part: " + partNumber + " of " + numberOfParts);
 
-            // Request presigned URL for this part
-            PresignedUrlResponse presignedResponse = requestPresignedUrl(endpoint, pendingUploadId, partNumber, contentLength);
+            // A failed part is retried by itself, with a fresh presigned URL in case the previous one expired
+            withRetries("Part " + partNumber, metrics, () -> {
+                // Request presigned URL for this part
+                PresignedUrlResponse presignedResponse = requestPresignedUrl(endpoint, pendingUploadId, partNumber, contentLength);
 
-            // Upload chunk via presigned URL
-            uploadChunk(filePath, presignedResponse.getPartPresignedUrl(), chunkStart, chunkEnd, contentLength);
+                // Upload chunk via presigned URL
+                uploadChunk(source, path, presignedResponse.getPartPresignedUrl(), chunkStart, chunkEnd, contentLength);
+                return null;
+            });
+            metrics.addFileBytes(isExpansion, contentLength);
         }
 
         // For simplicity, we'll return null for parts array in this implementation
@@ -160,34 +323,33 @@ public class BuildstashUploadService {
         return null;
     }
 
-    private PresignedUrlResponse requestPresignedUrl(String endpoint, String pendingUploadId, int partNumber, long contentLength) throws Exception {
-        Map<String, Object> payload = Map.of(
-            "pending_upload_id", pendingUploadId,
-            "part_number", partNumber,
-            "content_length", contentLength
-        );
-
-        String jsonPayload = objectMapper.writeValueAsString(payload);
-
+    private PresignedUrlResponse requestPresignedUrl(URI endpoint, String pendingUploadId, int partNumber, long contentLength) throws Exception {
         HttpRequest httpRequest = HttpRequest.newBuilder()
-                .uri(URI.create(endpoint))
+                .uri(endpoint)
                 .header("Authorization", "Bearer " + apiKey)
                 .header("Content-Type", "application/json")
-                .POST(BodyPublishers.ofString(jsonPayload))
+                .timeout(timeoutFor(timeouts.requestTimeout()))
+                .POST(BuildstashJson.publisher(json -> {
+                    json.writeStringField("pending_upload_id", pendingUploadId);
+                    json.writeNumberField("part_number", partNumber);
+                    json.writeNumberField("content_length", contentLength);
+                }))
                 .build();
 
-        HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
-        
-        if (response.statusCode() != 200) {
-            throw new RuntimeException("Failed to get presigned URL: " + response.statusCode() + " - " + response.body());
-        }
+        HttpResponse<InputStream> response = send(httpRequest, BodyHandlers.ofInputStream(), UploadPhase.PRESIGN_PART);
 
-        return objectMapper.readValue(response.body(), PresignedUrlResponse.class);
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new BuildstashHttpException("Failed to get presigned URL: " + response.statusCode() + " - " + BuildstashJson.readText(body),
+                        response.statusCode());
+            }
+            return BuildstashJson.PRESIGNED_URL_RESPONSE.readValue(body);
+        }
     }
 
-    private void uploadChunk(FilePath filePath, String presignedUrl, long start, long end, long contentLength) throws Exception {
+    private void uploadChunk(UploadFileSource source, String path, String presignedUrl, long start, long end, long contentLength) throws Exception {
         // Create input stream for the chunk
-        try (InputStream inputStream = filePath.read()) {
+        try (InputStream inputStream = source.open(path)) {
             // Skip to start position
             long skipped = inputStream.skip(start);
             if (skipped != start) {
@@ -219,18 +381,21 @@ public class BuildstashUploadService {
             HttpRequest httpRequest = HttpRequest.newBuilder()
                     .uri(URI.create(presignedUrl))
                     .header("Content-Type", "application/octet-stream")
+                    .timeout(timeoutFor(timeouts.transferTimeout(contentLength)))
                     .PUT(BodyPublishers.ofInputStream(() -> limitedInputStream))
                     .build();
 
-            HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
+            // Storage responses are only read on failure
+            HttpResponse<String> response = send(httpRequest, BuildstashJson.ERROR_BODY_ONLY, UploadPhase.TRANSFER);
             
             if (response.statusCode() != 200) {
-                throw new RuntimeException("Failed to upload chunk: " + response.statusCode() + " - " + response.body());
+                throw new BuildstashHttpException("Failed to upload chunk: " + response.statusCode() + " - " + response.body(), response.statusCode());
             }
         }
     }
 
-    private void uploadDirectFile(FilePath filePath, PresignedData presignedData) throws Exception {
+    private void uploadDirectFile(UploadFileSource source, String path, long fileSize, PresignedData presignedData, boolean isExpansion, UploadMetrics metrics) throws Exception {
+        checkCancelled();
         String url = presignedData.getUrl();
         
         if (url == null || url.isBlank()) {
@@ -243,13 +408,10 @@ public class BuildstashUploadService {
         String contentDisposition = presignedData.getHeaderAsString("Content-Disposition");
         String xAmzAcl = presignedData.getHeaderAsString("x-amz-acl");
 
-        // Verify file size matches Content-Length from presigned data
-        long fileSize = filePath.length();
-
         // Read file into byte array to ensure exact Content-Length matching
         // This is critical for AWS signature validation - the body must match exactly
         byte[] fileBytes;
-        try (InputStream inputStream = filePath.read()) {
+        try (InputStream inputStream = source.open(path)) {
             fileBytes = inputStream.readAllBytes();
             if (fileBytes.length != fileSize) {
                 throw new RuntimeException(
@@ -274,35 +436,332 @@ public class BuildstashUploadService {
             requestBuilder.header("x-amz-acl", xAmzAcl);
         }
 
+        requestBuilder.timeout(timeoutFor(timeouts.transferTimeout(fileBytes.length)));
         requestBuilder.PUT(HttpRequest.BodyPublishers.ofByteArray(fileBytes));
 
         HttpRequest httpRequest = requestBuilder.build();
-        HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
+        // Storage responses are only read on failure
+        HttpResponse<String> response = send(httpRequest, BuildstashJson.ERROR_BODY_ONLY, UploadPhase.TRANSFER);
 
         if (response.statusCode() != 200) {
-            throw new RuntimeException("Failed to upload file: " + response.statusCode() + " - " + response.body());
+            throw new BuildstashHttpException("Failed to upload file: " + response.statusCode() + " - " + response.body(), response.statusCode());
         }
+        metrics.addFileBytes(isExpansion, fileBytes.length);
     }
 
     private BuildstashUploadResponse verifyUpload(String pendingUploadId, List<MultipartChunk> primaryFileParts, List<MultipartChunk> expansionFileParts) throws Exception {
         // Build verify payload
-        Map<String, Object> payload = Map.of("pending_upload_id", pendingUploadId);
-        String jsonPayload = objectMapper.writeValueAsString(payload);
-
         HttpRequest httpRequest = HttpRequest.newBuilder()
-                .uri(URI.create(UPLOAD_VERIFY_ENDPOINT))
+                .uri(endpoint(UPLOAD_VERIFY_PATH))
                 .header("Authorization", "Bearer " + apiKey)
                 .header("Content-Type", "application/json")
-                .POST(BodyPublishers.ofString(jsonPayload))
+                .timeout(timeoutFor(timeouts.verifyTimeout()))
+                .POST(BuildstashJson.publisher(json -> json.writeStringField("pending_upload_id", pendingUploadId)))
                 .build();
 
-        HttpResponse<String> response = httpClient.send(httpRequest, BodyHandlers.ofString());
-        
-        if (response.statusCode() != 200) {
-            throw new RuntimeException("Failed to verify upload: " + response.statusCode() + " - " + response.body());
+        HttpResponse<InputStream> response = send(httpRequest, BodyHandlers.ofInputStream(), UploadPhase.VERIFY);
+
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new BuildstashHttpException("Failed to verify upload: " + response.statusCode() + " - " + BuildstashJson.readText(body),
+                        response.statusCode());
+            }
+            return BuildstashJson.UPLOAD_RESPONSE.readValue(body);
+        }
+    }
+
+    /**
+     * A single attempt of a call that may be retried.
+     */
+    @FunctionalInterface
+    private interface Attempt<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Runs a call, and retries it by itself after retryable failures according to the retry policy.
+     * Each retry is counted in the upload metrics.
+     */
+    private <T> T withRetries(String description, UploadMetrics metrics, Attempt<T> call) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.run();
+            } catch (Exception e) {
+                if (cancelled || !retryPolicy.shouldRetry(e, attempt)) {
+                    throw e;
+                }
+                long delay = retryPolicy.delayMillis(attempt);
+                listener.getLogger().println(description + " failed (attempt " + attempt + " of "
+                        + retryPolicy.getMaxAttempts() + "): " + e.getMessage() + ". Retrying in " + delay + " ms...");
+                metrics.addRetry();
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Cancels this service: any in-flight HTTP requests are aborted immediately,
+     * and any further request fails. Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (CompletableFuture<?> request : inFlightRequests) {
+            request.cancel(true);
+        }
+    }
+
+    private void checkCancelled() throws InterruptedException {
+        if (cancelled || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Buildstash upload was cancelled");
+        }
+    }
+
+    /**
+     * Gets the timeout for a request, clipped to the time remaining before the overall upload deadline.
+     * @throws BuildstashTimeoutException if the deadline has already passed
+     */
+    private Duration timeoutFor(Duration phaseTimeout) throws BuildstashTimeoutException {
+        Duration deadline = uploadDeadline;
+        if (deadline == null) {
+            return phaseTimeout;
+        }
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        if (remainingNanos <= 0) {
+            throw new BuildstashTimeoutException(UploadPhase.DEADLINE, deadline, null);
+        }
+        Duration remaining = Duration.ofNanos(remainingNanos);
+        return remaining.compareTo(phaseTimeout) < 0 ? remaining : phaseTimeout;
+    }
+
+    /**
+     * Sends a request once. Upload request, presigned part URL and verification calls are paced by the
+     * API key's {@link ApiRateLimiter}, which learns from 429 and 503 responses. Storage transfers are not paced.
+     * A throttling response is returned to the caller rather than sent again here: the limiter owns the
+     * {@code Retry-After} pause, which holds back every call using the key, and {@link #withRetries} owns
+     * the resend, so a throttled call counts against the retry policy's attempts only once.
+     */
+    private <T> HttpResponse<T> send(HttpRequest httpRequest, HttpResponse.BodyHandler<T> bodyHandler, UploadPhase phase) throws IOException, InterruptedException {
+        boolean paced = phase == UploadPhase.REQUEST || phase == UploadPhase.PRESIGN_PART || phase == UploadPhase.VERIFY;
+        if (paced) {
+            rateLimiter.acquire();
+        }
+        HttpResponse<T> response = sendGuarded(httpRequest, bodyHandler, phase);
+        if (!paced) {
+            return response;
+        }
+        int status = response.statusCode();
+        if (status != 429 && status != 503) {
+            rateLimiter.onSuccess();
+            return response;
         }
+        Duration pause = rateLimiter.onThrottled(
+                ApiRateLimiter.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null)));
+        if (status == 429) {
+            listener.getLogger().println("Buildstash rate limit reached during " + phase.getDescription()
+                    + ", pausing API calls for " + pause.toMillis() + " ms...");
+        }
+        return response;
+    }
+
+    /**
+     * Sends a single request so that it can be aborted, either by interrupting the calling thread or by {@link #cancel()}.
+     * Timeouts are reported as {@link BuildstashTimeoutException} with the phase in which they happened.
+     * API calls fail fast with {@link CircuitOpenException} while the circuit breaker is open.
+     */
+    private <T> HttpResponse<T> sendGuarded(HttpRequest httpRequest, HttpResponse.BodyHandler<T> bodyHandler, UploadPhase phase) throws IOException, InterruptedException {
+        checkCancelled();
+        // Buildstash API calls go through the shared circuit breaker, storage transfers don't
+        BuildstashCircuitBreaker breaker = phase != UploadPhase.TRANSFER ? BuildstashCircuitBreaker.get() : null;
+        if (breaker != null) {
+            breaker.acquire();
+        }
+        boolean recorded = false;
+        CompletableFuture<HttpResponse<T>> future = null;
+        try {
+            future = httpClient.sendAsync(httpRequest, bodyHandler);
+            inFlightRequests.add(future);
+            // Re-check in case cancel() ran before the future was registered
+            if (cancelled) {
+                future.cancel(true);
+            }
+            HttpResponse<T> response = future.get();
+            if (breaker != null) {
+                if (response.statusCode() >= 500) {
+                    breaker.onFailure(phase.getDescription() + " returned " + response.statusCode());
+                } else {
+                    breaker.onSuccess();
+                }
+                recorded = true;
+            }
+            return response;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (CancellationException e) {
+            throw new InterruptedException("Buildstash upload was cancelled");
+        } catch (ExecutionException e) {
+            IOException failure = translateFailure(e, httpRequest, phase);
+            // Running out of the overall deadline says nothing about the API
+            boolean deadline = failure instanceof BuildstashTimeoutException
+                    && ((BuildstashTimeoutException) failure).getPhase() == UploadPhase.DEADLINE;
+            if (breaker != null && !deadline) {
+                breaker.onFailure(phase.getDescription() + ": " + failure.getMessage());
+                recorded = true;
+            }
+            throw failure;
+        } finally {
+            if (future != null) {
+                inFlightRequests.remove(future);
+            }
+            if (breaker != null && !recorded) {
+                breaker.release();
+            }
+        }
+    }
 
-        return objectMapper.readValue(response.body(), BuildstashUploadResponse.class);
+    private IOException translateFailure(ExecutionException e, HttpRequest httpRequest, UploadPhase phase) {
+        Throwable cause = e.getCause();
+        if (cause instanceof HttpConnectTimeoutException) {
+            return new BuildstashTimeoutException(UploadPhase.CONNECT, timeouts.connectTimeout(), cause);
+        }
+        if (cause instanceof HttpTimeoutException) {
+            Duration deadline = uploadDeadline;
+            if (deadline != null && deadlineNanos - System.nanoTime() <= 0) {
+                return new BuildstashTimeoutException(UploadPhase.DEADLINE, deadline, cause);
+            }
+            return new BuildstashTimeoutException(phase, httpRequest.timeout().orElse(Duration.ZERO), cause);
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException(cause != null ? cause.getMessage() : e.getMessage(), cause);
+    }
+
+    /**
+     * Best-effort cleanup of a pending upload after the upload was aborted.
+     * Failures are logged and otherwise ignored; the pending upload sweeper tries again later.
+     * @return Whether the pending upload is gone, i.e. cancelled or already unknown to the server
+     */
+    boolean abortPendingUpload(String pendingUploadId) {
+        if (pendingUploadId == null) {
+            return true;
+        }
+        // Clear the interrupt flag so the cleanup request itself can run, and restore it afterwards
+        boolean interrupted = Thread.interrupted();
+        try {
+            listener.getLogger().println("Cancelling pending upload " + pendingUploadId + "...");
+            HttpRequest httpRequest = HttpRequest.newBuilder()
+                    .uri(endpoint(UPLOAD_ABORT_PATH))
+                    .header("Authorization", "Bearer " + apiKey)
+                    .header("Content-Type", "application/json")
+                    .timeout(timeouts.requestTimeout())
+                    .POST(BuildstashJson.publisher(json -> json.writeStringField("pending_upload_id", pendingUploadId)))
+                    .build();
+            HttpResponse<String> response = httpClient.send(httpRequest, BuildstashJson.ERROR_BODY_ONLY);
+            int status = response.statusCode();
+            if (status / 100 == 2 || status == 404 || status == 410) {
+                return true;
+            }
+            listener.getLogger().println("Failed to cancel pending upload: " + status + " - " + response.body());
+            return false;
+        } catch (Exception e) {
+            listener.getLogger().println("Failed to cancel pending upload: " + e.getMessage());
+            return false;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Polls the build status until server-side processing has finished.
+     * Polling is driven by timers and asynchronous requests, so no thread is held while waiting.
+     * @param buildId The Buildstash build ID returned by the upload
+     * @param timeout Maximum time to wait for processing to complete
+     * @return Future completed with the final build status, or exceptionally on error or timeout
+     */
+    public CompletableFuture<BuildstashUploadResponse> awaitProcessing(String buildId, Duration timeout) {
+        CompletableFuture<BuildstashUploadResponse> result = new CompletableFuture<>();
+        long deadlineNanos = System.nanoTime() + timeout.toNanos();
+        scheduleProcessingPoll(buildId, 0, deadlineNanos, timeout, result);
+        return result;
+    }
+
+    private void scheduleProcessingPoll(String buildId, int attempt, long deadlineNanos, Duration timeout,
+                                        CompletableFuture<BuildstashUploadResponse> result) {
+        if (result.isDone()) {
+            // Cancelled by the caller
+            return;
+        }
+        if (cancelled) {
+            result.cancel(false);
+            return;
+        }
+
+        long remainingMillis = (deadlineNanos - System.nanoTime()) / 1_000_000L;
+        if (remainingMillis <= 0) {
+            result.completeExceptionally(new AbortException("Timed out after " + timeout.toMinutes()
+                    + " minutes waiting for Buildstash to finish processing build " + buildId));
+            return;
+        }
+
+        long delay = Math.min(PROCESSING_POLL_BACKOFF.delayMillis(attempt), remainingMillis);
+        Timer.get().schedule(() -> pollProcessing(buildId, attempt, deadlineNanos, timeout, result),
+                delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void pollProcessing(String buildId, int attempt, long deadlineNanos, Duration timeout,
+                                CompletableFuture<BuildstashUploadResponse> result) {
+        if (result.isDone()) {
+            return;
+        }
+
+        HttpRequest httpRequest = HttpRequest.newBuilder()
+                .uri(endpoint(BUILD_STATUS_PATH + URLEncoder.encode(buildId, StandardCharsets.UTF_8)))
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Accept", "application/json")
+                .timeout(timeouts.requestTimeout())
+                .GET()
+                .build();
+
+        // Parsed from bytes rather than a stream, since the callback runs on the HTTP client's threads
+        CompletableFuture<HttpResponse<byte[]>> poll = httpClient.sendAsync(httpRequest, BodyHandlers.ofByteArray());
+        inFlightRequests.add(poll);
+        poll.whenComplete((response, error) -> {
+            inFlightRequests.remove(poll);
+            if (result.isDone()) {
+                return;
+            }
+            if (error != null) {
+                // Network errors are treated as transient while there is time left
+                listener.getLogger().println("Failed to check Buildstash processing status, will retry: " + error.getMessage());
+                scheduleProcessingPoll(buildId, attempt + 1, deadlineNanos, timeout, result);
+                return;
+            }
+
+            if (response.statusCode() != 200) {
+                result.completeExceptionally(new RuntimeException("Failed to get build status: "
+                        + response.statusCode() + " - " + new String(response.body(), StandardCharsets.UTF_8)));
+                return;
+            }
+
+            try {
+                BuildstashUploadResponse status = BuildstashJson.UPLOAD_RESPONSE.readValue(response.body());
+                if (status.getBuildId() == null) {
+                    status.setBuildId(buildId);
+                }
+                if (status.isPendingProcessing()) {
+                    listener.getLogger().println("Build " + buildId + " is still processing...");
+                    scheduleProcessingPoll(buildId, attempt + 1, deadlineNanos, timeout, result);
+                } else {
+                    listener.getLogger().println("Build " + buildId + " finished processing");
+                    result.complete(status);
+                }
+            } catch (Exception e) {
+                result.completeExceptionally(new RuntimeException("Failed to parse build status: " + e.getMessage(), e));
+            }
+        });
     }
 
     public void close() throws IOException {
@@ -0,0 +1,153 @@
+package com.buildstash;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the revision of the first entry in a build changelog without parsing the whole file.
+ * Handles the plain text format written by the Git plugin ("commit &lt;sha&gt;") and the XML formats
+ * written by other SCMs (a revision, node or changelist attribute or element on the first entry).
+ */
+final class ChangelogReader {
+
+    private static final Pattern GIT_COMMIT_LINE = Pattern.compile("^commit ([0-9a-fA-F]{7,64})\\b");
+
+    /** Attribute or element names that hold an entry's revision, e.g. SVN logentry/@revision, Mercurial changeset/@node. */
+    private static final String[] REVISION_NAMES = {"revision", "node", "changelist", "changeNumber", "commitId", "id"};
+
+    /** How many lines of a text changelog to scan for the first commit header. */
+    private static final int MAX_TEXT_LINES = 64;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private ChangelogReader() {
+    }
+
+    /**
+     * Reads the revision of the first changelog entry.
+     * @return The revision, or null if the file is missing, empty or not in a recognised format
+     */
+    static String firstRevision(File changelog) throws IOException {
+        if (changelog == null || !changelog.isFile() || changelog.length() == 0) {
+            return null;
+        }
+        try (PushbackInputStream in = new PushbackInputStream(Files.newInputStream(changelog.toPath()), 64)) {
+            int first = skipWhitespace(in);
+            if (first < 0) {
+                return null;
+            }
+            in.unread(first);
+            return first == '<' ? firstXmlRevision(in) : firstTextRevision(in);
+        }
+    }
+
+    private static int skipWhitespace(InputStream in) throws IOException {
+        int b;
+        do {
+            b = in.read();
+        } while (b >= 0 && Character.isWhitespace(b));
+        return b;
+    }
+
+    private static String firstTextRevision(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lines = 0;
+        while ((line = reader.readLine()) != null && lines++ < MAX_TEXT_LINES) {
+            Matcher matcher = GIT_COMMIT_LINE.matcher(line);
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+        return null;
+    }
+
+    private static String firstXmlRevision(InputStream in) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            // Depth of the first entry element (the root's first child), 0 until it is found
+            int depth = 0;
+            int entryDepth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (entryDepth == 0 && depth == 2) {
+                        entryDepth = depth;
+                        String attribute = revisionAttribute(reader);
+                        if (attribute != null) {
+                            return attribute;
+                        }
+                    } else if (entryDepth > 0 && isRevisionName(reader.getLocalName())) {
+                        String text = reader.getElementText().trim();
+                        depth--;
+                        if (!text.isEmpty()) {
+                            return text;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == entryDepth && entryDepth > 0) {
+                        // Only the first entry is considered
+                        return null;
+                    }
+                    depth--;
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to read changelog: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private static String revisionAttribute(XMLStreamReader reader) {
+        for (String name : REVISION_NAMES) {
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                if (name.equals(reader.getAttributeLocalName(i))) {
+                    String value = reader.getAttributeValue(i).trim();
+                    if (!value.isEmpty()) {
+                        return value;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRevisionName(String name) {
+        for (String revisionName : REVISION_NAMES) {
+            if (revisionName.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // Changelogs are local files, but never resolve DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
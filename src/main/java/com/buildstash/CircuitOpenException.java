@@ -0,0 +1,15 @@
+package com.buildstash;
+
+/**
+ * Thrown instead of calling the Buildstash API while {@link BuildstashCircuitBreaker} is open.
+ * Like other {@link BuildstashUnavailableException}s it lets the upload be queued in the outbox,
+ * but it is never retried in place.
+ */
+public class CircuitOpenException extends BuildstashUnavailableException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String message) {
+        super(message, null);
+    }
+}
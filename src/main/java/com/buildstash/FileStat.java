@@ -0,0 +1,37 @@
+package com.buildstash;
+
+import java.io.Serializable;
+
+/**
+ * Metadata of a workspace file, resolved on the agent by {@link FileStatCallable}.
+ */
+public class FileStat implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+    private final String name;
+    private final boolean exists;
+    private final long size;
+    private final long lastModified;
+    private final String sha256;
+
+    FileStat(String path, String name, boolean exists, long size, long lastModified, String sha256) {
+        this.path = path;
+        this.name = name;
+        this.exists = exists;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.sha256 = sha256;
+    }
+
+    // Getters
+    /** The path as given, relative to the workspace or absolute. */
+    public String getPath() { return path; }
+    public String getName() { return name; }
+    public boolean exists() { return exists; }
+    public long getSize() { return size; }
+    public long getLastModified() { return lastModified; }
+    /** Hex encoded SHA-256 of the content, or null if no digest was requested or the file doesn't exist. */
+    public String getSha256() { return sha256; }
+}
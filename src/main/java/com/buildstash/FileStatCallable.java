@@ -0,0 +1,77 @@
+package com.buildstash;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the metadata of several workspace files in a single call to the agent,
+ * instead of one remoting round trip per exists(), getName() and length().
+ */
+class FileStatCallable extends MasterToSlaveFileCallable<Map<String, FileStat>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> paths;
+    private final boolean digest;
+
+    /**
+     * @param paths Paths relative to the workspace, or absolute
+     * @param digest Whether to also compute the SHA-256 of each existing file
+     */
+    FileStatCallable(List<String> paths, boolean digest) {
+        this.paths = List.copyOf(paths);
+        this.digest = digest;
+    }
+
+    @Override
+    public Map<String, FileStat> invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+        Map<String, FileStat> stats = new LinkedHashMap<>();
+        for (String path : paths) {
+            if (!stats.containsKey(path)) {
+                stats.put(path, stat(workspace, path));
+            }
+        }
+        return stats;
+    }
+
+    private FileStat stat(File workspace, String path) throws IOException {
+        // Same resolution as FilePath.child: absolute paths are used as-is
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(workspace, path);
+        }
+        if (!file.isFile()) {
+            return new FileStat(path, file.getName(), false, 0, 0, null);
+        }
+        return new FileStat(path, file.getName(), true, file.length(), file.lastModified(),
+                digest ? sha256(file) : null);
+    }
+
+    private static String sha256(File file) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(messageDigest.digest());
+    }
+}
@@ -0,0 +1,109 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.plugins.git.BranchSpec;
+import hudson.plugins.git.GitSCM;
+import hudson.plugins.git.Revision;
+import hudson.plugins.git.UserRemoteConfig;
+import hudson.plugins.git.util.BuildData;
+import hudson.scm.SCM;
+import jenkins.plugins.git.AbstractGitSCMSource;
+import jenkins.scm.api.SCMRevision;
+import jenkins.scm.api.SCMRevisionAction;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detects version control information from the Git plugin: the configured GitSCM for freestyle builds,
+ * and the BuildData recorded by checkouts for both freestyle builds and pipelines.
+ * Only loaded when the Git plugin is installed.
+ */
+@Extension(optional = true, ordinal = 100)
+public class GitVcsInfoProvider extends VcsInfoProvider {
+
+    @Override
+    public void populate(UploadContext context, SCM scm, BuildstashUploadRequest request) {
+        Run<?, ?> run = context.getRun();
+        BuildData buildData = context.getAction(BuildData.class);
+
+        if (scm instanceof GitSCM) {
+            GitSCM gitScm = (GitSCM) scm;
+            RepositoryIdentity.get(run.getParent(), scm.getKey(), () -> VersionControlDetector.identityFor("git", firstRemoteUrl(gitScm)))
+                    .applyTo(request);
+
+            // Configured branch spec, e.g. */main
+            List<BranchSpec> branches = gitScm.getBranches();
+            if (VersionControlDetector.isNullOrBlank(request.getVcBranch()) && !branches.isEmpty()) {
+                String branchName = branches.get(0).getName();
+                if (!VersionControlDetector.isNullOrBlank(branchName)) {
+                    request.setVcBranch(VersionControlDetector.stripPrefixes(branchName, VersionControlDetector.BRANCH_SPEC_PREFIXES));
+                }
+            }
+        }
+
+        if (VersionControlDetector.isNullOrBlank(request.getVcCommitSha())) {
+            // Prefer the revision recorded by the SCM API (multibranch), which is cheaper than
+            // reading BuildData or the changelog
+            String hash = scmRevisionHash(context);
+            if (hash != null) {
+                request.setVcCommitSha(hash);
+            }
+        }
+
+        if (buildData == null) {
+            return;
+        }
+
+        if (VersionControlDetector.isNullOrBlank(request.getVcRepoUrl())) {
+            Set<String> remoteUrls = buildData.getRemoteUrls();
+            if (!remoteUrls.isEmpty()) {
+                String remoteUrl = remoteUrls.iterator().next();
+                if (!VersionControlDetector.isNullOrBlank(remoteUrl)) {
+                    RepositoryIdentity.get(run.getParent(), remoteUrl, () -> VersionControlDetector.identityFor("git", remoteUrl))
+                            .applyTo(request);
+                }
+            }
+        }
+
+        if (VersionControlDetector.isNullOrBlank(request.getVcBranch())) {
+            Map<String, ?> buildsByBranch = buildData.getBuildsByBranchName();
+            if (!buildsByBranch.isEmpty()) {
+                String branchName = buildsByBranch.keySet().iterator().next();
+                if (!VersionControlDetector.isNullOrBlank(branchName)) {
+                    request.setVcBranch(VersionControlDetector.stripPrefixes(branchName, VersionControlDetector.BUILD_DATA_BRANCH_PREFIXES));
+                }
+            }
+        }
+
+        if (VersionControlDetector.isNullOrBlank(request.getVcCommitSha())) {
+            Revision revision = buildData.getLastBuiltRevision();
+            if (revision != null) {
+                request.setVcCommitSha(revision.getSha1String());
+            }
+        }
+
+        if (VersionControlDetector.isNullOrBlank(request.getVcHostType())) {
+            request.setVcHostType("git");
+        }
+    }
+
+    /**
+     * Gets the Git hash recorded in the run's SCMRevisionAction, if any.
+     */
+    private static String scmRevisionHash(UploadContext context) {
+        SCMRevisionAction action = context.getAction(SCMRevisionAction.class);
+        SCMRevision revision = action != null ? action.getRevision() : null;
+        if (revision instanceof AbstractGitSCMSource.SCMRevisionImpl) {
+            return ((AbstractGitSCMSource.SCMRevisionImpl) revision).getHash();
+        }
+        return null;
+    }
+
+    private static String firstRemoteUrl(GitSCM scm) {
+        List<UserRemoteConfig> configs = scm.getUserRemoteConfigs();
+        return configs.isEmpty() ? null : configs.get(0).getUrl();
+    }
+}
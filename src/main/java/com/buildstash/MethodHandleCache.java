@@ -0,0 +1,136 @@
+package com.buildstash;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-class cache of resolved method handles for the reflective SCM lookups in {@link ReflectiveVcsInfoProvider}.
+ * Missing methods are cached too, so repeated detection doesn't pay for lookups or NoSuchMethodExceptions again.
+ * Entries are keyed by {@link ClassValue}, so they don't keep plugin class loaders alive.
+ */
+final class MethodHandleCache {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    /** Shape every cached handle is adapted to: (Object target, Object[] args) returning Object. */
+    private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    /** Prefix for lookups that accept the first public method with a name, whatever its parameters. */
+    private static final String ANY_ARITY = "*";
+
+    private static final ClassValue<ConcurrentMap<String, Optional<CachedMethod>>> METHODS = new ClassValue<>() {
+        @Override
+        protected ConcurrentMap<String, Optional<CachedMethod>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private MethodHandleCache() {
+    }
+
+    /**
+     * Finds a public no-argument method.
+     * @return The method, or null if the class has no such method
+     */
+    static CachedMethod find(Class<?> type, String methodName) {
+        return METHODS.get(type)
+                .computeIfAbsent(methodName, name -> resolve(type, name, false))
+                .orElse(null);
+    }
+
+    /**
+     * Finds the public no-argument method with the given name, or else the first public method with that name.
+     * @return The method, or null if the class has no method with that name
+     */
+    static CachedMethod findAnyArity(Class<?> type, String methodName) {
+        return METHODS.get(type)
+                .computeIfAbsent(ANY_ARITY + methodName, key -> resolve(type, methodName, true))
+                .orElse(null);
+    }
+
+    /**
+     * Invokes a public no-argument method on the target.
+     * @return The result, or null if the target is null or has no such method
+     */
+    static Object invoke(Object target, String methodName) throws Exception {
+        if (target == null) {
+            return null;
+        }
+        CachedMethod method = find(target.getClass(), methodName);
+        return method != null ? method.invoke(target) : null;
+    }
+
+    /**
+     * Invokes a public no-argument method on the target and returns the result as a string.
+     * @return The result, or null if the target is null, has no such method, or the method returned null
+     */
+    static String invokeForString(Object target, String methodName) throws Exception {
+        Object result = invoke(target, methodName);
+        return result != null ? result.toString() : null;
+    }
+
+    private static Optional<CachedMethod> resolve(Class<?> type, String methodName, boolean anyArity) {
+        Method method = null;
+        try {
+            method = type.getMethod(methodName);
+        } catch (NoSuchMethodException e) {
+            if (anyArity) {
+                for (Method candidate : type.getMethods()) {
+                    if (candidate.getName().equals(methodName)) {
+                        method = candidate;
+                        break;
+                    }
+                }
+            }
+        }
+        if (method == null) {
+            return Optional.empty();
+        }
+        try {
+            int parameterCount = method.getParameterCount();
+            MethodHandle handle = LOOKUP.unreflect(method)
+                    .asSpreader(Object[].class, parameterCount)
+                    .asType(GENERIC_TYPE);
+            return Optional.of(new CachedMethod(handle, parameterCount));
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            // Not accessible (e.g. declared on a non-public class); treat as missing like reflection would fail
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * A resolved method, adapted so it can be invoked on any target without further lookups.
+     */
+    static final class CachedMethod {
+
+        private final MethodHandle handle;
+        private final int parameterCount;
+
+        private CachedMethod(MethodHandle handle, int parameterCount) {
+            this.handle = handle;
+            this.parameterCount = parameterCount;
+        }
+
+        int getParameterCount() {
+            return parameterCount;
+        }
+
+        /**
+         * Invokes the method, passing null for any parameters.
+         */
+        Object invoke(Object target) throws Exception {
+            try {
+                return (Object) handle.invokeExact(target, new Object[parameterCount]);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new Exception(t);
+            }
+        }
+    }
+}
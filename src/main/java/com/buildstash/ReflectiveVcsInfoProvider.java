@@ -0,0 +1,178 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.scm.NullSCM;
+import hudson.scm.SCM;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Fallback provider for SCMs without a typed provider, e.g. Perforce, Mercurial or CVS.
+ * Detects the host type from the SCM class name, the Perforce depot through reflection
+ * (the p4 plugin is not a dependency), and the commit from well-known environment variables,
+ * or failing that from the first changelog entry.
+ */
+@Extension(ordinal = -100)
+public class ReflectiveVcsInfoProvider extends VcsInfoProvider {
+
+    /** Revision variables exported by common SCM plugins, checked before falling back to the changelog. */
+    private static final String[] REVISION_ENV_VARS = {"GIT_COMMIT", "SVN_REVISION", "P4_CHANGELIST", "MERCURIAL_REVISION"};
+
+    @Override
+    public void populate(UploadContext context, SCM scm, BuildstashUploadRequest request) throws Exception {
+        Run<?, ?> run = context.getRun();
+        if (scm != null && !(scm instanceof NullSCM)) {
+            RepositoryIdentity.get(run.getParent(), scm.getKey(), () -> resolveIdentity(scm)).applyTo(request);
+        }
+
+        if (VersionControlDetector.isNullOrBlank(request.getVcCommitSha())) {
+            String revision = revisionFromEnvironment(context);
+            if (revision == null) {
+                // Last resort: stream the changelog, stopping at the first entry
+                revision = revisionFromChangelog(run);
+            }
+            if (revision != null) {
+                request.setVcCommitSha(revision);
+            }
+        }
+    }
+
+    private static String revisionFromEnvironment(UploadContext context) {
+        for (String name : REVISION_ENV_VARS) {
+            String value = context.getEnvVar(name);
+            if (!VersionControlDetector.isNullOrBlank(value)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the first revision from the run's changelog without loading the change set.
+     * Freestyle builds write changelog.xml; pipelines write one changelogN.xml per checkout.
+     */
+    private static String revisionFromChangelog(Run<?, ?> run) throws IOException {
+        File rootDir = run.getRootDir();
+        if (run instanceof AbstractBuild) {
+            return ChangelogReader.firstRevision(new File(rootDir, "changelog.xml"));
+        }
+        String[] names = rootDir.list((dir, name) -> name.startsWith("changelog") && name.endsWith(".xml"));
+        if (names == null) {
+            return null;
+        }
+        sortChangelogs(names);
+        for (String name : names) {
+            String revision = ChangelogReader.firstRevision(new File(rootDir, name));
+            if (revision != null) {
+                return revision;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sorts changelog file names by checkout index, so changelog10.xml comes after changelog2.xml.
+     */
+    static void sortChangelogs(String[] names) {
+        Arrays.sort(names, Comparator.comparingLong(ReflectiveVcsInfoProvider::changelogIndex)
+                .thenComparing(Comparator.naturalOrder()));
+    }
+
+    private static long changelogIndex(String name) {
+        String index = name.substring("changelog".length(), name.length() - ".xml".length());
+        if (index.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(index);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static RepositoryIdentity resolveIdentity(SCM scm) {
+        String hostType = detectHostType(scm);
+        if (!"perforce".equals(hostType)) {
+            return new RepositoryIdentity(hostType, null, null, null);
+        }
+        String depotPath = getPerforceDepotPath(scm);
+        if (depotPath == null) {
+            return new RepositoryIdentity(hostType, "perforce", null, null);
+        }
+        return new RepositoryIdentity(hostType, "perforce", depotPath, extractPerforceRepoName(depotPath));
+    }
+
+    /**
+     * Detects the SCM host type (git, svn, hg, etc.) from the SCM class name.
+     */
+    private static String detectHostType(SCM scm) {
+        String scmClassLower = scm.getClass().getName().toLowerCase(Locale.ROOT);
+
+        if (scmClassLower.contains("git")) {
+            return "git";
+        } else if (scmClassLower.contains("svn") || scmClassLower.contains("subversion")) {
+            return "svn";
+        } else if (scmClassLower.contains("mercurial") || scmClassLower.contains("hg")) {
+            return "hg";
+        } else if (scmClassLower.contains("bazaar") || scmClassLower.contains("bzr")) {
+            return "bzr";
+        } else if (scmClassLower.contains("perforce") || scmClassLower.contains(".p4.")) {
+            return "perforce";
+        } else if (scmClassLower.contains("cvs")) {
+            return "cvs";
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the Perforce depot path, prefixed with the server port when available.
+     */
+    private static String getPerforceDepotPath(SCM scm) {
+        try {
+            if (MethodHandleCache.find(scm.getClass(), "getDepotPath") != null) {
+                String depotPath = MethodHandleCache.invokeForString(scm, "getDepotPath");
+                if (VersionControlDetector.isNullOrBlank(depotPath)) {
+                    return null;
+                }
+                String p4Port = MethodHandleCache.invokeForString(scm, "getP4Port");
+                return VersionControlDetector.isNullOrBlank(p4Port) ? depotPath : p4Port + "/" + depotPath;
+            }
+            String depot = MethodHandleCache.invokeForString(scm, "getDepot");
+            return VersionControlDetector.isNullOrBlank(depot) ? null : depot;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Extracts repository name from Perforce depot path.
+     * Examples:
+     * - //depot/main/project -> project
+     * - //depot/streams/main -> main
+     * - //depot/project -> project
+     */
+    private static String extractPerforceRepoName(String depotPath) {
+        // Remove leading // if present
+        String path = depotPath.startsWith("//") ? depotPath.substring(2) : depotPath;
+
+        // Split by / and get the last meaningful part, skipping common depot prefixes
+        String[] parts = path.split("/");
+        for (int i = parts.length - 1; i >= 0; i--) {
+            String part = parts[i];
+            if (!part.isEmpty() && !part.equalsIgnoreCase("depot")
+                && !part.equalsIgnoreCase("streams")
+                && !part.equalsIgnoreCase("main")) {
+                return part;
+            }
+        }
+        // If all parts were skipped, return the last part anyway
+        return parts.length > 0 ? parts[parts.length - 1] : null;
+    }
+}
@@ -0,0 +1,88 @@
+package com.buildstash;
+
+import hudson.model.Job;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The parts of version control information that depend only on the repository: URL, host, host type and name.
+ * These rarely change between builds of a job, so they are cached per job in memory, keyed by the SCM
+ * configuration key (freestyle) or the remote URL (pipelines). Only branch and commit are resolved per run.
+ */
+final class RepositoryIdentity {
+
+    /** Upper bound on repositories remembered per job, e.g. for pipelines checking out several repositories. */
+    private static final int MAX_ENTRIES_PER_JOB = 16;
+
+    private static final Map<Job<?, ?>, Map<String, RepositoryIdentity>> CACHE =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final String hostType;
+    private final String host;
+    private final String repoUrl;
+    private final String repoName;
+
+    RepositoryIdentity(String hostType, String host, String repoUrl, String repoName) {
+        this.hostType = hostType;
+        this.host = host;
+        this.repoUrl = repoUrl;
+        this.repoName = repoName;
+    }
+
+    /**
+     * Gets the cached identity for a job and key, resolving and caching it if needed.
+     * @param job The job, or null to skip caching
+     * @param key SCM configuration key or remote URL
+     * @param resolver Resolves the identity when it is not cached
+     */
+    static RepositoryIdentity get(Job<?, ?> job, String key, Supplier<RepositoryIdentity> resolver) {
+        if (job == null || key == null || key.isBlank()) {
+            return resolver.get();
+        }
+        Map<String, RepositoryIdentity> identities = CACHE.computeIfAbsent(job, j -> new ConcurrentHashMap<>());
+        RepositoryIdentity identity = identities.get(key);
+        if (identity == null) {
+            identity = resolver.get();
+            if (identities.size() >= MAX_ENTRIES_PER_JOB) {
+                identities.clear();
+            }
+            identities.put(key, identity);
+        }
+        return identity;
+    }
+
+    /**
+     * Forgets all cached identities, e.g. after the repository host rules changed.
+     */
+    static void clearCache() {
+        CACHE.clear();
+    }
+
+    /**
+     * Populates the fields of a request that are null or blank.
+     */
+    void applyTo(BuildstashUploadRequest request) {
+        if (hostType != null && isNullOrBlank(request.getVcHostType())) {
+            request.setVcHostType(hostType);
+        }
+        if (host != null && isNullOrBlank(request.getVcHost())) {
+            request.setVcHost(host);
+        }
+        if (repoName != null && isNullOrBlank(request.getVcRepoName())) {
+            request.setVcRepoName(repoName);
+        }
+        if (repoUrl != null && isNullOrBlank(request.getVcRepoUrl())) {
+            request.setVcRepoUrl(repoUrl);
+        }
+    }
+
+    private static boolean isNullOrBlank(String str) {
+        return str == null || str.isBlank();
+    }
+
+    String getHostType() { return hostType; }
+}
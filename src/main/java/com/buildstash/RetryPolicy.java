@@ -0,0 +1,76 @@
+package com.buildstash;
+
+import jenkins.util.SystemProperties;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Decides whether a failed Buildstash call is retried, and how long to wait before the next attempt.
+ * Connection errors, timeouts of a single call and transient HTTP statuses are retried up to a
+ * maximum number of attempts, with exponential backoff and jitter between attempts.
+ * The overall upload deadline, an open circuit breaker and other HTTP statuses are not retried.
+ */
+public class RetryPolicy {
+
+    /** Statuses that indicate a transient problem on the server or storage side. */
+    static final Set<Integer> TRANSIENT_STATUS_CODES = Set.of(408, 429, 500, 502, 503, 504);
+
+    static final RetryPolicy DEFAULT = new RetryPolicy(
+            SystemProperties.getInteger(RetryPolicy.class.getName() + ".maxAttempts", 4),
+            new Backoff(1_000, 30_000, 2.0, 0.5), TRANSIENT_STATUS_CODES);
+
+    private final int maxAttempts;
+    private final Backoff backoff;
+    private final Set<Integer> retryableStatusCodes;
+
+    /**
+     * @param maxAttempts Maximum number of attempts per call, including the first one
+     * @param backoff Delays between attempts
+     * @param retryableStatusCodes HTTP statuses that are retried
+     */
+    public RetryPolicy(int maxAttempts, Backoff backoff, Set<Integer> retryableStatusCodes) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoff = backoff;
+        this.retryableStatusCodes = Set.copyOf(retryableStatusCodes);
+    }
+
+    /**
+     * Whether a failure is worth another attempt, regardless of the attempts made so far.
+     */
+    public boolean isRetryable(Throwable error) {
+        if (error instanceof CircuitOpenException) {
+            // Waiting out the backoff wouldn't close the breaker, fail fast instead
+            return false;
+        }
+        if (error instanceof BuildstashHttpException) {
+            return retryableStatusCodes.contains(((BuildstashHttpException) error).getStatusCode());
+        }
+        if (error instanceof BuildstashTimeoutException) {
+            return ((BuildstashTimeoutException) error).getPhase() != UploadPhase.DEADLINE;
+        }
+        // Connection refused or reset, truncated responses, ...
+        return error instanceof IOException;
+    }
+
+    /**
+     * Whether to retry after a failed attempt.
+     * @param attempt One-based number of the attempt that failed
+     */
+    public boolean shouldRetry(Throwable error, int attempt) {
+        return attempt < maxAttempts && isRetryable(error);
+    }
+
+    /**
+     * Gets the delay before the attempt following the given failed attempt.
+     * @param attempt One-based number of the attempt that failed
+     * @return Delay in milliseconds
+     */
+    public long delayMillis(int attempt) {
+        return backoff.delayMillis(attempt - 1);
+    }
+
+    public int getMaxAttempts() { return maxAttempts; }
+    public Backoff getBackoff() { return backoff; }
+    public Set<Integer> getRetryableStatusCodes() { return retryableStatusCodes; }
+}
@@ -0,0 +1,59 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.scm.SCM;
+import hudson.scm.SVNRevisionState;
+import hudson.scm.SubversionSCM;
+
+/**
+ * Detects version control information from the Subversion plugin.
+ * Only loaded when the Subversion plugin is installed.
+ */
+@Extension(optional = true, ordinal = 90)
+public class SubversionVcsInfoProvider extends VcsInfoProvider {
+
+    private static final String[] REVISION_ENV_VARS = {"SVN_REVISION", "SVN_REV", "SVN_REVISION_NUMBER", "SVN_VERSION"};
+
+    @Override
+    public void populate(UploadContext context, SCM scm, BuildstashUploadRequest request) {
+        Run<?, ?> run = context.getRun();
+        String repoUrl = null;
+        if (scm instanceof SubversionSCM) {
+            SubversionSCM.ModuleLocation[] locations = ((SubversionSCM) scm).getLocations();
+            repoUrl = locations.length > 0 ? locations[0].getURL() : null;
+            final String locationUrl = repoUrl;
+            RepositoryIdentity.get(run.getParent(), scm.getKey(), () -> VersionControlDetector.identityFor("svn", locationUrl))
+                    .applyTo(request);
+        }
+
+        SVNRevisionState revisionState = context.getAction(SVNRevisionState.class);
+        if (!(scm instanceof SubversionSCM) && revisionState == null) {
+            return;
+        }
+        if (VersionControlDetector.isNullOrBlank(request.getVcHostType())) {
+            request.setVcHostType("svn");
+        }
+        if (!VersionControlDetector.isNullOrBlank(request.getVcCommitSha())) {
+            return;
+        }
+
+        // Revision recorded for the checked out location
+        if (revisionState != null && repoUrl != null) {
+            long revision = revisionState.getRevision(repoUrl);
+            if (revision > 0) {
+                request.setVcCommitSha(Long.toString(revision));
+                return;
+            }
+        }
+
+        // Revision exported to the build environment
+        for (String name : REVISION_ENV_VARS) {
+            String value = context.getEnvVar(name);
+            if (!VersionControlDetector.isNullOrBlank(value)) {
+                request.setVcCommitSha(value);
+                return;
+            }
+        }
+    }
+}
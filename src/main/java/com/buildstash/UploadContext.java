@@ -0,0 +1,100 @@
+package com.buildstash;
+
+import hudson.EnvVars;
+import hudson.model.Action;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the build state needed for one upload: environment, URLs, actions and timing.
+ * Built once per upload and shared by request creation and version control detection, so that
+ * environment contributors, the root URL lookup and the action list are only evaluated once.
+ */
+public final class UploadContext {
+
+    private final Run<?, ?> run;
+    private final TaskListener listener;
+    private final EnvVars env;
+    private final String rootUrl;
+    private final List<Action> actions;
+    private final long buildDurationMillis;
+
+    private UploadContext(Run<?, ?> run, TaskListener listener, EnvVars env) {
+        this.run = run;
+        this.listener = listener != null ? listener : TaskListener.NULL;
+        this.env = env != null ? new EnvVars(env) : new EnvVars();
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        this.rootUrl = jenkins != null ? jenkins.getRootUrl() : null;
+        this.actions = List.copyOf(run.getActions());
+        this.buildDurationMillis = BuildstashUploadHelper.getBuildDuration(run);
+    }
+
+    /**
+     * Creates a snapshot using an already computed environment.
+     * @param env Environment for the upload, may be null
+     */
+    public static UploadContext of(Run<?, ?> run, TaskListener listener, EnvVars env) {
+        return new UploadContext(run, listener, env);
+    }
+
+    /**
+     * Creates a snapshot, computing the run's environment.
+     */
+    public static UploadContext of(Run<?, ?> run, TaskListener listener) throws IOException, InterruptedException {
+        return new UploadContext(run, listener, run.getEnvironment(listener != null ? listener : TaskListener.NULL));
+    }
+
+    /**
+     * Expands environment variables in a string value.
+     * Values without a <code>$</code> are returned as-is without scanning the environment.
+     * @return The expanded value, or null if the value is null
+     */
+    public String expand(String value) {
+        if (value == null || value.indexOf('$') < 0) {
+            return value;
+        }
+        return env.expand(value);
+    }
+
+    /**
+     * Gets an environment variable from the snapshot.
+     */
+    public String getEnvVar(String name) {
+        return env.get(name);
+    }
+
+    /**
+     * Gets the first action of the given type from the snapshot of the run's persisted actions.
+     */
+    public <T extends Action> T getAction(Class<T> type) {
+        for (Action action : actions) {
+            if (type.isInstance(action)) {
+                return type.cast(action);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the full URL of the build, or the relative URL if the root URL is not configured.
+     */
+    public String getBuildUrl() {
+        return rootUrl != null ? rootUrl + run.getUrl() : run.getUrl();
+    }
+
+    /**
+     * Gets the full URL of the job, or the relative URL if the root URL is not configured.
+     */
+    public String getProjectUrl() {
+        return rootUrl != null ? rootUrl + run.getParent().getUrl() : run.getParent().getUrl();
+    }
+
+    public Run<?, ?> getRun() { return run; }
+    public TaskListener getListener() { return listener; }
+    public String getRootUrl() { return rootUrl; }
+    public long getBuildDurationMillis() { return buildDurationMillis; }
+}
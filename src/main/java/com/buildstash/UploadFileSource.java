@@ -0,0 +1,70 @@
+package com.buildstash;
+
+import hudson.FilePath;
+import jenkins.util.VirtualFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the files of an upload are read from: the workspace, or the archived artifacts of a run.
+ */
+interface UploadFileSource {
+
+    /**
+     * Resolves the metadata of several files at once.
+     * @return Metadata keyed by path, in the given order
+     */
+    Map<String, FileStat> stat(List<String> paths) throws IOException, InterruptedException;
+
+    /**
+     * Opens a file for reading from its start.
+     */
+    InputStream open(String path) throws IOException, InterruptedException;
+
+    /**
+     * Reads files from a workspace, which may be on an agent.
+     * Paths are relative to the workspace, or absolute.
+     */
+    static UploadFileSource of(FilePath workspace) {
+        return new UploadFileSource() {
+            @Override
+            public Map<String, FileStat> stat(List<String> paths) throws IOException, InterruptedException {
+                return workspace.act(new FileStatCallable(paths, false));
+            }
+
+            @Override
+            public InputStream open(String path) throws IOException, InterruptedException {
+                return workspace.child(path).read();
+            }
+        };
+    }
+
+    /**
+     * Reads files from archived artifacts, e.g. {@code run.getArtifactManager().root()}.
+     * Paths are relative to the artifact root, the same as the workspace paths they were archived from.
+     */
+    static UploadFileSource of(VirtualFile artifacts) {
+        return new UploadFileSource() {
+            @Override
+            public Map<String, FileStat> stat(List<String> paths) throws IOException {
+                Map<String, FileStat> stats = new LinkedHashMap<>();
+                for (String path : paths) {
+                    VirtualFile file = artifacts.child(path);
+                    stats.put(path, file.isFile()
+                            ? new FileStat(path, file.getName(), true, file.length(), file.lastModified(), null)
+                            : new FileStat(path, file.getName(), false, 0, 0, null));
+                }
+                return stats;
+            }
+
+            @Override
+            public InputStream open(String path) throws IOException {
+                return artifacts.child(path).open();
+            }
+        };
+    }
+}
@@ -0,0 +1,103 @@
+package com.buildstash;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.io.Serializable;
+
+/**
+ * Data model for metrics recorded while uploading a build to Buildstash.
+ * Captures file sizes and the time spent in each phase of the upload.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class UploadMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @JsonProperty("primary_file_bytes")
+    private long primaryFileBytes;
+
+    @JsonProperty("expansion_file_bytes")
+    private long expansionFileBytes;
+
+    @JsonProperty("request_millis")
+    private long requestMillis;
+
+    @JsonProperty("transfer_millis")
+    private long transferMillis;
+
+    @JsonProperty("verify_millis")
+    private long verifyMillis;
+
+    @JsonProperty("total_millis")
+    private long totalMillis;
+
+    /** Attempts beyond the first one, across all calls of the upload. */
+    @JsonProperty("retries")
+    private int retries;
+
+    // Default constructor for JSON deserialization
+    public UploadMetrics() {}
+
+    // Getters and Setters
+    public long getPrimaryFileBytes() { return primaryFileBytes; }
+    public void setPrimaryFileBytes(long primaryFileBytes) { this.primaryFileBytes = primaryFileBytes; }
+
+    public long getExpansionFileBytes() { return expansionFileBytes; }
+    public void setExpansionFileBytes(long expansionFileBytes) { this.expansionFileBytes = expansionFileBytes; }
+
+    public long getRequestMillis() { return requestMillis; }
+    public void setRequestMillis(long requestMillis) { this.requestMillis = requestMillis; }
+
+    public long getTransferMillis() { return transferMillis; }
+    public void setTransferMillis(long transferMillis) { this.transferMillis = transferMillis; }
+
+    public long getVerifyMillis() { return verifyMillis; }
+    public void setVerifyMillis(long verifyMillis) { this.verifyMillis = verifyMillis; }
+
+    public long getTotalMillis() { return totalMillis; }
+    public void setTotalMillis(long totalMillis) { this.totalMillis = totalMillis; }
+
+    public int getRetries() { return retries; }
+    public void setRetries(int retries) { this.retries = retries; }
+
+    /**
+     * Records a retried attempt of a call.
+     */
+    public void addRetry() {
+        retries++;
+    }
+
+    /**
+     * Records bytes transferred for either the primary or the expansion file.
+     */
+    public void addFileBytes(boolean isExpansion, long bytes) {
+        if (isExpansion) {
+            expansionFileBytes += bytes;
+        } else {
+            primaryFileBytes += bytes;
+        }
+    }
+
+    /**
+     * Get the total number of bytes uploaded across all files.
+     * @return Total bytes
+     */
+    @JsonIgnore
+    public long getTotalBytes() {
+        return primaryFileBytes + expansionFileBytes;
+    }
+
+    /**
+     * Get the effective transfer throughput, measured over the transfer phase only.
+     * @return Throughput in MB/s, or 0 if nothing was transferred
+     */
+    @JsonIgnore
+    public double getMegabytesPerSecond() {
+        if (transferMillis <= 0) {
+            return 0;
+        }
+        return (getTotalBytes() / (1024.0 * 1024.0)) / (transferMillis / 1000.0);
+    }
+}
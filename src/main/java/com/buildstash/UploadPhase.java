@@ -0,0 +1,24 @@
+package com.buildstash;
+
+/**
+ * Phases of a Buildstash upload, used to report where a failure or timeout happened.
+ */
+public enum UploadPhase {
+    CONNECT("connect"),
+    REQUEST("upload URL request"),
+    PRESIGN_PART("presigned part URL request"),
+    TRANSFER("file transfer"),
+    VERIFY("upload verification"),
+    PROCESSING("processing status check"),
+    DEADLINE("overall upload deadline");
+
+    private final String description;
+
+    UploadPhase(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
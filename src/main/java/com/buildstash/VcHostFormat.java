@@ -0,0 +1,133 @@
+package com.buildstash;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * How a VC host lays out commit pages and repository paths, used to build commit links and
+ * read repository names from repository URLs. Built-in hosts have a fixed format; admin-defined
+ * host rules use the format of their VC host, optionally with their own commit URL template.
+ * Commit URL templates use <code>{repoUrl}</code>, the repository URL without <code>.git</code>
+ * and trailing slashes, and <code>{commit}</code>.
+ */
+final class VcHostFormat {
+
+    /** Where the repository name sits in the URL path. */
+    enum RepoNameStyle {
+        /** The last path segment, e.g. <code>owner/repo</code> or <code>group/subgroup/repo</code>. */
+        LAST_SEGMENT,
+        /** The segment after <code>_git</code>, e.g. <code>org/project/_git/repo</code>. */
+        AFTER_GIT_SEGMENT,
+        /** Bitbucket Server paths, e.g. <code>scm/project/repo</code> or <code>projects/PROJECT/repos/repo</code>. */
+        BITBUCKET_SERVER
+    }
+
+    private static final Pattern NUMERIC_REVISION = Pattern.compile("^\\d+$");
+
+    private static final String COMMIT = "{repoUrl}/commit/{commit}";
+
+    private static final Map<String, VcHostFormat> BUILT_IN = Map.ofEntries(
+            format("github", COMMIT, RepoNameStyle.LAST_SEGMENT),
+            format("gitlab", "{repoUrl}/-/commit/{commit}", RepoNameStyle.LAST_SEGMENT),
+            format("gitlab-self", "{repoUrl}/-/commit/{commit}", RepoNameStyle.LAST_SEGMENT),
+            // Bitbucket Cloud and Server both use the plural "commits"
+            format("bitbucket", "{repoUrl}/commits/{commit}", RepoNameStyle.BITBUCKET_SERVER),
+            format("gitea", COMMIT, RepoNameStyle.LAST_SEGMENT),
+            format("forgejo", COMMIT, RepoNameStyle.LAST_SEGMENT),
+            format("gogs", COMMIT, RepoNameStyle.LAST_SEGMENT),
+            format("codeberg", COMMIT, RepoNameStyle.LAST_SEGMENT),
+            format("sourcehut", COMMIT, RepoNameStyle.LAST_SEGMENT),
+            format("gitee", COMMIT, RepoNameStyle.LAST_SEGMENT),
+            // The repository URL already ends with /_git/REPO-NAME
+            format("azure-repos", COMMIT, RepoNameStyle.AFTER_GIT_SEGMENT),
+            // SourceForge Git commits live under /ci/, SVN revisions directly under the repository
+            Map.entry("sourceforge", new VcHostFormat("sourceforge", "{repoUrl}/ci/{commit}/", "{repoUrl}/{commit}/",
+                    RepoNameStyle.LAST_SEGMENT)));
+
+    private final String vcHost;
+    /** Template for commit links, or null if commit pages can't be derived, e.g. Perforce or plain SVN. */
+    private final String commitUrlTemplate;
+    /** Template for numeric (SVN) revisions. */
+    private final String revisionUrlTemplate;
+    private final RepoNameStyle repoNameStyle;
+
+    private VcHostFormat(String vcHost, String commitUrlTemplate, String revisionUrlTemplate, RepoNameStyle repoNameStyle) {
+        this.vcHost = vcHost;
+        this.commitUrlTemplate = commitUrlTemplate;
+        this.revisionUrlTemplate = revisionUrlTemplate;
+        this.repoNameStyle = repoNameStyle;
+    }
+
+    private static Map.Entry<String, VcHostFormat> format(String vcHost, String commitUrlTemplate, RepoNameStyle repoNameStyle) {
+        return Map.entry(vcHost, new VcHostFormat(vcHost, commitUrlTemplate, commitUrlTemplate, repoNameStyle));
+    }
+
+    /**
+     * Gets the format of a VC host.
+     * @return The built-in format, a format without commit links for hosts that have none, or null for a null host
+     */
+    static VcHostFormat of(String vcHost) {
+        if (vcHost == null || vcHost.isBlank()) {
+            return null;
+        }
+        VcHostFormat format = BUILT_IN.get(vcHost);
+        return format != null ? format : new VcHostFormat(vcHost, null, null, RepoNameStyle.LAST_SEGMENT);
+    }
+
+    /**
+     * Creates a copy of this format that builds commit links from the given template instead.
+     */
+    VcHostFormat withCommitUrlTemplate(String template) {
+        return new VcHostFormat(vcHost, template, template, repoNameStyle);
+    }
+
+    String getVcHost() { return vcHost; }
+
+    /**
+     * Builds the link to a commit or revision.
+     * @param baseUrl Repository URL without <code>.git</code> and trailing slashes
+     * @return The link, or null if this host has no known commit pages
+     */
+    String commitUrl(String baseUrl, String commit) {
+        String template = NUMERIC_REVISION.matcher(commit).matches() ? revisionUrlTemplate : commitUrlTemplate;
+        if (template == null) {
+            return null;
+        }
+        return template.replace("{repoUrl}", baseUrl).replace("{commit}", commit);
+    }
+
+    /**
+     * Reads the repository name from a URL path in this host's special layout.
+     * @param path URL path without the leading slash and <code>.git</code>
+     * @return The name, or null if the path isn't in a special layout and the last segment applies
+     */
+    String repoName(String path) {
+        String[] parts = path.split("/");
+        String lowerPath = "/" + path.toLowerCase(Locale.ROOT) + "/";
+        switch (repoNameStyle) {
+            case AFTER_GIT_SEGMENT:
+                if (lowerPath.contains("/_git/")) {
+                    for (int i = 0; i < parts.length - 1; i++) {
+                        if ("_git".equalsIgnoreCase(parts[i]) && !parts[i + 1].isEmpty()) {
+                            return parts[i + 1];
+                        }
+                    }
+                }
+                return null;
+            case BITBUCKET_SERVER:
+                if (lowerPath.contains("/scm/") || lowerPath.contains("/projects/")) {
+                    for (int i = parts.length - 1; i >= 0; i--) {
+                        if (!parts[i].isEmpty() && !parts[i].equalsIgnoreCase("scm")
+                                && !parts[i].equalsIgnoreCase("projects")
+                                && !parts[i].equalsIgnoreCase("repos")) {
+                            return parts[i];
+                        }
+                    }
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+}
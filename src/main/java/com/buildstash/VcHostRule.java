@@ -0,0 +1,59 @@
+package com.buildstash;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.ListBoxModel;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Admin-defined mapping from a self-hosted repository host to a Buildstash VC host,
+ * e.g. <code>git.example.com</code> to <code>gitlab-self</code>.
+ * A host starting with <code>*.</code> also matches all subdomains. An optional commit URL template
+ * overrides the VC host's commit links, e.g. <code>{repoUrl}/commit/{commit}</code>.
+ */
+public class VcHostRule extends AbstractDescribableImpl<VcHostRule> {
+
+    private String host;
+    private String vcHost;
+    private String commitUrlTemplate;
+
+    @DataBoundConstructor
+    public VcHostRule() {
+        // Default constructor required for Jenkins
+    }
+
+    // Getters and Setters
+    public String getHost() { return host; }
+
+    @DataBoundSetter
+    public void setHost(String host) { this.host = host; }
+
+    public String getVcHost() { return vcHost; }
+
+    @DataBoundSetter
+    public void setVcHost(String vcHost) { this.vcHost = vcHost; }
+
+    public String getCommitUrlTemplate() { return commitUrlTemplate; }
+
+    @DataBoundSetter
+    public void setCommitUrlTemplate(String commitUrlTemplate) { this.commitUrlTemplate = commitUrlTemplate; }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<VcHostRule> {
+
+        @Override
+        public String getDisplayName() {
+            return "Repository Host Rule";
+        }
+
+        public ListBoxModel doFillVcHostItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (String vcHost : VcHostRules.KNOWN_VC_HOSTS) {
+                items.add(vcHost);
+            }
+            return items;
+        }
+    }
+}
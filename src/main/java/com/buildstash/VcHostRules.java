@@ -0,0 +1,206 @@
+package com.buildstash;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Precompiled table mapping repository URLs to Buildstash VC hosts.
+ * The host is parsed from the URL once and looked up by exact name, then by each parent domain.
+ * Self-hosted products that can't be identified by domain fall back to ordered keyword rules
+ * matched against the whole URL. A match resolves to a {@link VcHostFormat}, which also builds
+ * commit links and reads repository names, so admin-defined rules get those too.
+ */
+final class VcHostRules {
+
+    /** VC host identifiers understood by Buildstash. */
+    static final List<String> KNOWN_VC_HOSTS = List.of(
+            "github", "gitlab", "gitlab-self", "bitbucket", "azure-repos", "gitea", "forgejo", "gogs", "codeberg",
+            "sourceforge", "sourcehut", "aws-codecommit", "perforce", "gitee", "riouxsvn", "assembla");
+
+    /** Built-in domains; each also matches its subdomains. */
+    private static final Map<String, String> BUILT_IN_DOMAINS = Map.ofEntries(
+            Map.entry("github.com", "github"),
+            Map.entry("gitlab.com", "gitlab"),
+            Map.entry("bitbucket.org", "bitbucket"),
+            Map.entry("dev.azure.com", "azure-repos"),
+            Map.entry("azure.com", "azure-repos"),
+            Map.entry("visualstudio.com", "azure-repos"),
+            Map.entry("codeberg.org", "codeberg"),
+            Map.entry("sourceforge.com", "sourceforge"),
+            Map.entry("sr.ht", "sourcehut"),
+            Map.entry("gitee.com", "gitee"),
+            Map.entry("riouxsvn.com", "riouxsvn"),
+            Map.entry("assembla.com", "assembla"));
+
+    /**
+     * Keyword fallbacks in priority order, matched against the lowercased URL.
+     * Only used when the host isn't in the table, e.g. self-hosted products or unusual URL forms.
+     */
+    private static final String[][] KEYWORD_RULES = {
+            {"github.com", "github"},
+            {"gitlab.com", "gitlab"},
+            {"gitlab", "gitlab-self"},
+            {"bitbucket.org", "bitbucket"},
+            {"azure.com", "azure-repos"},
+            {"visualstudio.com", "azure-repos"},
+            {"gitea", "gitea"},
+            {"forgejo", "forgejo"},
+            {"gogs", "gogs"},
+            {"codeberg", "codeberg"},
+            {"sourceforge.com", "sourceforge"},
+            {"sourcehut", "sourcehut"},
+            {"sr.ht", "sourcehut"},
+            {"codecommit", "aws-codecommit"},
+            {"perforce", "perforce"},
+            {"gitee", "gitee"},
+            {"riouxsvn", "riouxsvn"},
+            {"assembla.com", "assembla"},
+    };
+
+    private static final VcHostRules BUILT_IN = new VcHostRules(formats(BUILT_IN_DOMAINS), Map.of());
+
+    /** Domains that also match subdomains. */
+    private final Map<String, VcHostFormat> domains;
+    /** Hosts that match exactly. */
+    private final Map<String, VcHostFormat> exactHosts;
+
+    private VcHostRules(Map<String, VcHostFormat> domains, Map<String, VcHostFormat> exactHosts) {
+        this.domains = domains;
+        this.exactHosts = exactHosts;
+    }
+
+    /**
+     * Compiles admin-defined host rules into a lookup table.
+     */
+    static VcHostRules compile(List<VcHostRule> rules) {
+        Map<String, VcHostFormat> domains = new HashMap<>();
+        Map<String, VcHostFormat> exactHosts = new HashMap<>();
+        if (rules != null) {
+            for (VcHostRule rule : rules) {
+                String host = rule.getHost();
+                String vcHost = rule.getVcHost();
+                if (host == null || host.isBlank() || vcHost == null || vcHost.isBlank()) {
+                    continue;
+                }
+                VcHostFormat format = VcHostFormat.of(vcHost);
+                String template = rule.getCommitUrlTemplate();
+                if (template != null && !template.isBlank()) {
+                    format = format.withCommitUrlTemplate(template.trim());
+                }
+                host = host.trim().toLowerCase(Locale.ROOT);
+                if (host.startsWith("*.")) {
+                    domains.putIfAbsent(host.substring(2), format);
+                } else {
+                    exactHosts.putIfAbsent(host, format);
+                }
+            }
+        }
+        return new VcHostRules(domains, exactHosts);
+    }
+
+    /**
+     * Detects the VC host for a repository URL, checking the given admin rules before the built-in table.
+     * @param custom Compiled admin rules, may be null
+     * @return The VC host, or null if unknown
+     */
+    static String detect(String url, VcHostRules custom) {
+        VcHostFormat format = resolve(url, custom);
+        return format != null ? format.getVcHost() : null;
+    }
+
+    /**
+     * Resolves the VC host of a repository URL, checking the given admin rules before the built-in table.
+     * @param custom Compiled admin rules, may be null
+     * @return The host's format, or null if the host is unknown
+     */
+    static VcHostFormat resolve(String url, VcHostRules custom) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        String host = parseHost(url);
+        if (host != null) {
+            VcHostFormat format = custom != null ? custom.lookup(host) : null;
+            if (format == null) {
+                format = BUILT_IN.lookup(host);
+            }
+            if (format != null) {
+                return format;
+            }
+        }
+
+        String lowerUrl = url.toLowerCase(Locale.ROOT);
+        for (String[] rule : KEYWORD_RULES) {
+            if (lowerUrl.contains(rule[0])) {
+                return VcHostFormat.of(rule[1]);
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, VcHostFormat> formats(Map<String, String> vcHosts) {
+        Map<String, VcHostFormat> formats = new HashMap<>();
+        vcHosts.forEach((domain, vcHost) -> formats.put(domain, VcHostFormat.of(vcHost)));
+        return formats;
+    }
+
+    private VcHostFormat lookup(String host) {
+        VcHostFormat vcHost = exactHosts.get(host);
+        if (vcHost != null) {
+            return vcHost;
+        }
+        // Try the host itself, then each parent domain
+        String domain = host;
+        while (true) {
+            vcHost = domains.get(domain);
+            if (vcHost != null) {
+                return vcHost;
+            }
+            int dot = domain.indexOf('.');
+            if (dot < 0) {
+                break;
+            }
+            domain = domain.substring(dot + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Extracts the lowercased host name from a repository URL.
+     * Handles scheme URLs (https://, ssh://user@host:port/), scp-like syntax (git@host:path) and bare host/path.
+     * @return The host, or null if none could be found
+     */
+    static String parseHost(String url) {
+        String rest = url.trim();
+        int schemeEnd = rest.indexOf("://");
+        if (schemeEnd >= 0) {
+            rest = rest.substring(schemeEnd + 3);
+        }
+        int pathStart = indexOfAny(rest, '/', '?', '#');
+        String authority = pathStart >= 0 ? rest.substring(0, pathStart) : rest;
+        int userEnd = authority.lastIndexOf('@');
+        if (userEnd >= 0) {
+            authority = authority.substring(userEnd + 1);
+        }
+        // Drop the port, or the path separator in scp-like syntax
+        int colon = authority.indexOf(':');
+        if (colon >= 0) {
+            authority = authority.substring(0, colon);
+        }
+        if (authority.isEmpty() || authority.indexOf('.') < 0) {
+            return null;
+        }
+        return authority.toLowerCase(Locale.ROOT);
+    }
+
+    private static int indexOfAny(String str, char a, char b, char c) {
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            if (ch == a || ch == b || ch == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,31 @@
+package com.buildstash;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.scm.SCM;
+
+/**
+ * Extension point for detecting version control information for a build.
+ * Providers are consulted in ordinal order (highest first) until every version control field is filled,
+ * so SCM-specific providers should use a higher ordinal than generic fallbacks.
+ * Other plugins can contribute providers for their own SCMs.
+ */
+public abstract class VcsInfoProvider implements ExtensionPoint {
+
+    /**
+     * Populates the version control fields of the request that are still null or blank.
+     * Fields already set by a higher-priority provider must be left alone.
+     * @param context Snapshot of the build; prefer its environment and actions over querying the run again
+     * @param scm The project's SCM for freestyle builds, or null for pipelines
+     * @param request Request to populate
+     */
+    public abstract void populate(UploadContext context, @CheckForNull SCM scm, BuildstashUploadRequest request) throws Exception;
+
+    /**
+     * Gets all registered providers, in ordinal order.
+     */
+    public static ExtensionList<VcsInfoProvider> all() {
+        return ExtensionList.lookup(VcsInfoProvider.class);
+    }
+}
@@ -0,0 +1,68 @@
+package com.buildstash;
+
+import java.io.Serializable;
+
+/**
+ * Version control information detected for a build, independent of any manual overrides on an upload.
+ */
+public class VersionControlInfo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String hostType;
+    private String host;
+    private String repoName;
+    private String repoUrl;
+    private String branch;
+    private String commitSha;
+
+    /**
+     * Copies the version control fields of a request.
+     */
+    static VersionControlInfo from(BuildstashUploadRequest request) {
+        VersionControlInfo info = new VersionControlInfo();
+        info.hostType = request.getVcHostType();
+        info.host = request.getVcHost();
+        info.repoName = request.getVcRepoName();
+        info.repoUrl = request.getVcRepoUrl();
+        info.branch = request.getVcBranch();
+        info.commitSha = request.getVcCommitSha();
+        return info;
+    }
+
+    /**
+     * Populates the fields of a request that are null or blank (allows manual override).
+     */
+    void applyTo(BuildstashUploadRequest request) {
+        if (isNullOrBlank(request.getVcHostType()) && !isNullOrBlank(hostType)) {
+            request.setVcHostType(hostType);
+        }
+        if (isNullOrBlank(request.getVcHost()) && !isNullOrBlank(host)) {
+            request.setVcHost(host);
+        }
+        if (isNullOrBlank(request.getVcRepoName()) && !isNullOrBlank(repoName)) {
+            request.setVcRepoName(repoName);
+        }
+        if (isNullOrBlank(request.getVcRepoUrl()) && !isNullOrBlank(repoUrl)) {
+            request.setVcRepoUrl(repoUrl);
+        }
+        if (isNullOrBlank(request.getVcBranch()) && !isNullOrBlank(branch)) {
+            request.setVcBranch(branch);
+        }
+        if (isNullOrBlank(request.getVcCommitSha()) && !isNullOrBlank(commitSha)) {
+            request.setVcCommitSha(commitSha);
+        }
+    }
+
+    private static boolean isNullOrBlank(String str) {
+        return str == null || str.isBlank();
+    }
+
+    // Getters
+    public String getHostType() { return hostType; }
+    public String getHost() { return host; }
+    public String getRepoName() { return repoName; }
+    public String getRepoUrl() { return repoUrl; }
+    public String getBranch() { return branch; }
+    public String getCommitSha() { return commitSha; }
+}
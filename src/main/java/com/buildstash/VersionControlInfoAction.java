@@ -0,0 +1,80 @@
+package com.buildstash;
+
+import hudson.model.Action;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import java.io.File;
+
+/**
+ * Caches the version control information detected for a run, so that multiple uploads
+ * in one pipeline only run detection once. The cache is invalidated when the state the
+ * providers read changes: another action is added to the run (a checkout adds Git BuildData,
+ * Subversion revision state, SCM revision actions, ...), or a changelog is written or grows.
+ */
+public class VersionControlInfoAction extends InvisibleAction {
+
+    private final VersionControlInfo info;
+    private final int actionCount;
+    private final int changelogCount;
+    private final long changelogBytes;
+
+    VersionControlInfoAction(VersionControlInfo info, int actionCount, int changelogCount, long changelogBytes) {
+        this.info = info;
+        this.actionCount = actionCount;
+        this.changelogCount = changelogCount;
+        this.changelogBytes = changelogBytes;
+    }
+
+    public VersionControlInfo getInfo() {
+        return info;
+    }
+
+    /**
+     * Gets the cached info for a run if it is still current.
+     * @return The cached info, or null if nothing is cached or the run's SCM state changed since
+     */
+    static VersionControlInfo getCurrent(Run<?, ?> run) {
+        VersionControlInfoAction action = run.getAction(VersionControlInfoAction.class);
+        if (action == null || !action.matches(snapshot(run, null))) {
+            return null;
+        }
+        return action.info;
+    }
+
+    /**
+     * Caches the info for a run, replacing any previous value.
+     */
+    static void store(Run<?, ?> run, VersionControlInfo info) {
+        run.addOrReplaceAction(snapshot(run, info));
+    }
+
+    private boolean matches(VersionControlInfoAction current) {
+        return actionCount == current.actionCount
+                && changelogCount == current.changelogCount
+                && changelogBytes == current.changelogBytes;
+    }
+
+    /**
+     * Captures the SCM state of a run. Only persisted actions are counted, which avoids running
+     * transient action factories; the plugin's own actions are left out, as uploads add them.
+     */
+    private static VersionControlInfoAction snapshot(Run<?, ?> run, VersionControlInfo info) {
+        int actionCount = 0;
+        for (Action action : run.getActions()) {
+            if (action != null && !action.getClass().getName().startsWith(VersionControlInfoAction.class.getPackageName() + ".")) {
+                actionCount++;
+            }
+        }
+        int changelogCount = 0;
+        long changelogBytes = 0;
+        File[] changelogs = run.getRootDir().listFiles((dir, name) -> name.startsWith("changelog") && name.endsWith(".xml"));
+        if (changelogs != null) {
+            for (File changelog : changelogs) {
+                changelogCount++;
+                changelogBytes += changelog.length();
+            }
+        }
+        return new VersionControlInfoAction(info, actionCount, changelogCount, changelogBytes);
+    }
+}
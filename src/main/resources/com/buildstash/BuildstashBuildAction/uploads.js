@@ -0,0 +1,112 @@
+/*
+ * Loads the rows of the Buildstash upload results page a page at a time from the action's JSON endpoint.
+ */
+Behaviour.specify(".buildstash-uploads", "buildstash-uploads", 0, function (container) {
+    var endpoint = container.getAttribute("data-endpoint");
+    var pageSize = parseInt(container.getAttribute("data-page-size"), 10) || 50;
+    var rows = container.querySelector(".buildstash-uploads__rows");
+    var status = container.querySelector(".buildstash-uploads__status");
+    var more = container.querySelector(".buildstash-uploads__more");
+    var platform = container.querySelector(".buildstash-uploads__platform");
+    var stream = container.querySelector(".buildstash-uploads__stream");
+    var loaded = 0;
+    // Ignore responses to requests made before the filters last changed
+    var generation = 0;
+
+    function cell(text) {
+        var td = document.createElement("td");
+        if (text == null || text === "") {
+            var na = document.createElement("span");
+            na.className = "jenkins-form-label";
+            na.textContent = "N/A";
+            td.appendChild(na);
+        } else {
+            td.textContent = text;
+        }
+        return td;
+    }
+
+    function linkCell(url) {
+        if (!url) {
+            return cell(null);
+        }
+        var td = document.createElement("td");
+        var a = document.createElement("a");
+        a.href = url;
+        a.target = "_blank";
+        a.rel = "noopener noreferrer";
+        a.className = "jenkins-table__link";
+        a.textContent = url;
+        td.appendChild(a);
+        return td;
+    }
+
+    function codeCell(text) {
+        var td = document.createElement("td");
+        var code = document.createElement("code");
+        code.textContent = text;
+        td.appendChild(code);
+        return td;
+    }
+
+    function load() {
+        var requested = generation;
+        var params = new URLSearchParams({
+            start: loaded,
+            limit: pageSize,
+            platform: platform.value,
+            stream: stream.value
+        });
+        more.disabled = true;
+        fetch(endpoint + "?" + params.toString())
+            .then(function (response) {
+                if (!response.ok) {
+                    throw new Error(response.status + " " + response.statusText);
+                }
+                return response.json();
+            })
+            .then(function (page) {
+                if (requested !== generation) {
+                    return;
+                }
+                page.items.forEach(function (item) {
+                    var tr = document.createElement("tr");
+                    if (item.buildId) {
+                        tr.appendChild(codeCell(item.buildId));
+                    } else {
+                        // Waiting in the outbox, or failed delivery from it
+                        tr.appendChild(cell(item.message));
+                    }
+                    tr.appendChild(cell(item.platform));
+                    tr.appendChild(cell(item.stream));
+                    tr.appendChild(linkCell(item.buildInfoUrl));
+                    tr.appendChild(linkCell(item.downloadUrl));
+                    tr.appendChild(codeCell(String(item.pendingProcessing)));
+                    rows.appendChild(tr);
+                });
+                loaded += page.items.length;
+                status.textContent = "Showing " + loaded + " of " + page.total + " uploads";
+                more.hidden = loaded >= page.total;
+                more.disabled = false;
+            })
+            .catch(function (error) {
+                if (requested !== generation) {
+                    return;
+                }
+                status.textContent = "Failed to load uploads: " + error.message;
+                more.disabled = false;
+            });
+    }
+
+    function reload() {
+        generation++;
+        loaded = 0;
+        rows.innerHTML = "";
+        load();
+    }
+
+    more.addEventListener("click", load);
+    platform.addEventListener("change", reload);
+    stream.addEventListener("change", reload);
+    load();
+});
@@ -0,0 +1,48 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApiRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final ApiRateLimiter limiter = new ApiRateLimiter(10, 2, now::get);
+
+    @Test
+    public void testBurstThenSustainedRate() {
+        assertEquals(0, limiter.tryAcquire());
+        assertEquals(0, limiter.tryAcquire());
+        long wait = limiter.tryAcquire();
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), wait, TimeUnit.MILLISECONDS.toNanos(1));
+
+        now.addAndGet(wait);
+        assertEquals(0, limiter.tryAcquire());
+    }
+
+    @Test
+    public void testThrottlingPausesAndHalvesRate() {
+        Duration pause = limiter.onThrottled(Duration.ofSeconds(3));
+
+        assertEquals(Duration.ofSeconds(3), pause);
+        assertEquals(5, limiter.getRate(), 0.001);
+        assertEquals(TimeUnit.SECONDS.toNanos(3), limiter.tryAcquire());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        assertEquals(0, limiter.tryAcquire());
+        limiter.onSuccess();
+        assertEquals(5.5, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertEquals(Duration.ofSeconds(120), ApiRateLimiter.parseRetryAfter("120"));
+        assertEquals(Duration.ZERO, ApiRateLimiter.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertNull(ApiRateLimiter.parseRetryAfter("soon"));
+        assertNull(ApiRateLimiter.parseRetryAfter(null));
+    }
+}
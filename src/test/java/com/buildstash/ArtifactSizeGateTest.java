@@ -0,0 +1,62 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArtifactSizeGateTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    @Test
+    public void testNoLimitsConfigured() {
+        assertNull(ArtifactSizeGate.fromParameters(null, ""));
+    }
+
+    @Test
+    public void testInvalidLimit() {
+        assertThrows(IllegalArgumentException.class, () -> ArtifactSizeGate.fromParameters("abc", null));
+        assertThrows(IllegalArgumentException.class, () -> ArtifactSizeGate.fromParameters(null, "-5"));
+    }
+
+    @Test
+    public void testAbsoluteLimit() {
+        ArtifactSizeGate gate = ArtifactSizeGate.fromParameters("100", null);
+
+        assertNull(gate.check(100 * MB, null));
+        assertNotNull(gate.check(101 * MB, null));
+    }
+
+    @Test
+    public void testGrowthLimit() {
+        ArtifactSizeGate gate = ArtifactSizeGate.fromParameters(null, "10");
+        BuildstashTrendRecord baseline = record("default", "android", 100 * MB);
+
+        assertNull(gate.check(110 * MB, baseline));
+        assertNotNull(gate.check(111 * MB, baseline));
+        // Without history there is nothing to compare against
+        assertNull(gate.check(500 * MB, null));
+    }
+
+    @Test
+    public void testFindBaselineMatchesStreamAndPlatform() {
+        BuildstashTrendRecord older = record("default", "android", 10 * MB);
+        BuildstashTrendRecord otherPlatform = record("default", "ios", 20 * MB);
+        BuildstashTrendRecord newer = record("default", "android", 30 * MB);
+        List<BuildstashTrendRecord> history = List.of(older, newer, otherPlatform);
+
+        assertSame(newer, ArtifactSizeGate.findBaseline(history, "default", "android"));
+        assertSame(otherPlatform, ArtifactSizeGate.findBaseline(history, "default", "ios"));
+        assertNull(ArtifactSizeGate.findBaseline(history, "nightlies", "android"));
+    }
+
+    private static BuildstashTrendRecord record(String stream, String platform, long bytes) {
+        BuildstashTrendRecord record = new BuildstashTrendRecord();
+        record.setStream(stream);
+        record.setPlatform(platform);
+        record.setPrimaryFileBytes(bytes);
+        return record;
+    }
+}
@@ -0,0 +1,141 @@
+package com.buildstash;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hudson.AbortException;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WithJenkins
+public class BuildstashBackgroundUploadsTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String originalApiBaseUrl;
+
+    /** Holds the upload URL request until the pipeline has deleted its workspace. */
+    private final CountDownLatch workspaceDeleted = new CountDownLatch(1);
+    private final AtomicReference<String> uploaded = new AtomicReference<>();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        server.createContext("/api/v1/upload/request", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                if (!workspaceDeleted.await(60, TimeUnit.SECONDS)) {
+                    respond(exchange, 500, "{\"message\":\"workspace was not deleted\"}");
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 500, "{}");
+                return;
+            }
+            respond(exchange, 200, "{\"pending_upload_id\":\"p1\","
+                    + "\"primary_file\":{\"chunked_upload\":false,"
+                    + "\"presigned_data\":{\"url\":\"" + baseUrl + "/storage\",\"headers\":{}}}}");
+        });
+        server.createContext("/storage", exchange -> {
+            uploaded.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            respond(exchange, 200, "");
+        });
+        server.createContext("/api/v1/upload/verify", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, 200, "{\"build_id\":\"b1\",\"pending_processing\":false}");
+        });
+        server.start();
+
+        originalApiBaseUrl = BuildstashUploadService.API_BASE_URL;
+        BuildstashUploadService.API_BASE_URL = baseUrl + "/api/v1";
+    }
+
+    @AfterEach
+    public void stopServer() {
+        workspaceDeleted.countDown();
+        BuildstashUploadService.API_BASE_URL = originalApiBaseUrl;
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testAwaitBackgroundUploadAfterWorkspaceIsGone(JenkinsRule j) throws Exception {
+        WorkflowJob job = j.createProject(WorkflowJob.class);
+        job.setDefinition(new CpsFlowDefinition(
+                "def handle\n"
+                + "node {\n"
+                + "  writeFile file: 'app.apk', text: 'apk'\n"
+                + "  handle = buildstash(wait: false, apiKey: 'test-key', primaryFilePath: 'app.apk',\n"
+                + "      versionComponent1Major: '1', versionComponent2Minor: '0', versionComponent3Patch: '0',\n"
+                + "      platform: 'android', stream: 'default')\n"
+                + "  deleteDir()\n"
+                + "  echo 'workspace deleted'\n"
+                + "}\n"
+                + "def result = buildstashAwait(handle)\n"
+                + "echo \"uploaded ${result.buildId}\"\n", true));
+
+        WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+        j.waitForMessage("workspace deleted", run);
+        workspaceDeleted.countDown();
+        j.assertBuildStatusSuccess(j.waitForCompletion(run));
+
+        j.assertLogContains("uploaded b1", run);
+        // The upload read the copy on the controller, which is removed afterwards
+        assertEquals("apk", uploaded.get());
+        File copies = new File(j.jenkins.getRootDir(), BuildstashBackgroundUploads.DIR_NAME);
+        String[] left = copies.list();
+        assertTrue(left == null || left.length == 0);
+    }
+
+    @Test
+    public void testUnawaitedUploadIsCancelledWhenRunCompletes(JenkinsRule j) throws Exception {
+        WorkflowJob job = j.createProject(WorkflowJob.class);
+        job.setDefinition(new CpsFlowDefinition("echo 'done'", true));
+        WorkflowRun run = j.buildAndAssertSuccess(job);
+
+        CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+        String handle = BuildstashBackgroundUploads.register(run,
+                new BuildstashUploadService("test-key", TaskListener.NULL), result);
+        assertSame(result, BuildstashBackgroundUploads.get(run, handle));
+
+        new BuildstashBackgroundUploads.RunListenerImpl().onCompleted(run, TaskListener.NULL);
+
+        assertTrue(result.isCancelled());
+        assertThrows(AbortException.class, () -> BuildstashBackgroundUploads.get(run, handle));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+}
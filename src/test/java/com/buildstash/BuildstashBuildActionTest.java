@@ -0,0 +1,127 @@
+package com.buildstash;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WithJenkins
+public class BuildstashBuildActionTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testAppendedUpdatesReplaceEarlierLines() throws Exception {
+        File file = tempDir.resolve(BuildstashBuildAction.FILE_NAME).toFile();
+        BuildstashUploadResponse first = new BuildstashUploadResponse("ok", "b1", true, "https://info/b1", null);
+        BuildstashBuildAction.appendUpload(file, first);
+        BuildstashBuildAction.appendUpload(file, new BuildstashUploadResponse("ok", "b2", false, null, null));
+        first.setPendingProcessing(false);
+        first.setDownloadUrl("https://download/b1");
+        BuildstashBuildAction.appendUpload(file, first);
+
+        List<BuildstashUploadResponse> responses = BuildstashBuildAction.readUploads(file, null);
+
+        assertEquals(2, responses.size());
+        assertEquals("b1", responses.get(0).getBuildId());
+        assertFalse(responses.get(0).isPendingProcessing());
+        assertEquals("https://download/b1", responses.get(0).getDownloadUrl());
+        assertEquals("b2", responses.get(1).getBuildId());
+    }
+
+    @Test
+    public void testLegacyResponsesAndTruncatedLine() throws Exception {
+        File file = tempDir.resolve(BuildstashBuildAction.FILE_NAME).toFile();
+        BuildstashBuildAction.appendUpload(file, new BuildstashUploadResponse("ok", "b2", false, null, null));
+        Files.write(file.toPath(), "{\"build_id\":\"b3\",\"pend".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        List<BuildstashUploadResponse> responses = BuildstashBuildAction.readUploads(file,
+                List.of(new BuildstashUploadResponse("ok", "b1", false, null, null)));
+
+        assertEquals(2, responses.size());
+        assertEquals("b1", responses.get(0).getBuildId());
+        assertEquals("b2", responses.get(1).getBuildId());
+    }
+
+    @Test
+    public void testPagingFilteringAndSummary() throws Exception {
+        BuildstashBuildAction action = new BuildstashBuildAction();
+        for (int i = 0; i < 5; i++) {
+            BuildstashUploadResponse response = new BuildstashUploadResponse("ok", "b" + i, i == 0, null, null);
+            response.setPlatform(i % 2 == 0 ? "android" : "ios");
+            response.setStream("default");
+            action.addResponse(response);
+        }
+
+        BuildstashBuildAction.Page page = action.getPage(1, 2, "android", null);
+        assertEquals(3, page.total);
+        assertEquals(1, page.start);
+        assertEquals(List.of("b2", "b4"), page.items.stream().map(BuildstashUploadResponse::getBuildId).toList());
+        assertTrue(action.getPage(10, 2, null, "default").items.isEmpty());
+        assertEquals(5, action.getPage(0, 10_000, null, null).items.size());
+
+        assertEquals(5, action.getUploadCount());
+        assertEquals(1, action.getPendingCount());
+        assertTrue(action.updateProcessingState("b0", new BuildstashUploadResponse("ok", "b0", false, null, null)));
+        assertEquals(0, action.getPendingCount());
+        assertEquals(Set.of("android", "ios"), action.getPlatforms());
+    }
+
+    @Test
+    public void testDeliveredUploadReplacesQueuedRecord() throws Exception {
+        File file = tempDir.resolve(BuildstashBuildAction.FILE_NAME).toFile();
+        BuildstashUploadResponse queued = new BuildstashUploadResponse("queued", null, false, null, null);
+        queued.setOutboxId("o1");
+        BuildstashBuildAction.appendUpload(file, queued);
+        BuildstashUploadResponse delivered = new BuildstashUploadResponse("ok", "b1", false, null, null);
+        delivered.setOutboxId("o1");
+        BuildstashBuildAction.appendUpload(file, delivered);
+
+        List<BuildstashUploadResponse> responses = BuildstashBuildAction.readUploads(file, null);
+
+        assertEquals(1, responses.size());
+        assertEquals("b1", responses.get(0).getBuildId());
+        assertFalse(responses.get(0).isQueued());
+    }
+
+    @Test
+    public void testSummaryFollowsUploadFileAfterReload(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject();
+        FreeStyleBuild run = j.buildAndAssertSuccess(project);
+        BuildstashUploadRequest request = new BuildstashUploadRequest();
+        request.setPlatform("android");
+        BuildstashUploadHelper.recordResults(run, request, new BuildstashUploadResponse("ok", "b1", true, null, null), TaskListener.NULL);
+        run.save();
+
+        // Neither change saves the run, only the upload file is written
+        BuildstashUploadHelper.recordResults(run, request, new BuildstashUploadResponse("ok", "b2", false, null, null), TaskListener.NULL);
+        run.getAction(BuildstashBuildAction.class).updateProcessingState("b1", new BuildstashUploadResponse("ok", "b1", false, null, null));
+        j.jenkins.reload();
+
+        BuildstashBuildAction action = j.jenkins.getItemByFullName(project.getFullName(), FreeStyleProject.class)
+                .getBuildByNumber(run.getNumber()).getAction(BuildstashBuildAction.class);
+        assertEquals(2, action.getUploadCount());
+        assertEquals(0, action.getPendingCount());
+        assertFalse(action.hasAnyPendingProcessing());
+    }
+
+    @Test
+    public void testMissingFile() {
+        assertTrue(BuildstashBuildAction.readUploads(tempDir.resolve("missing.jsonl").toFile(), null).isEmpty());
+        assertTrue(BuildstashBuildAction.readUploads(null, null).isEmpty());
+    }
+}
@@ -0,0 +1,127 @@
+package com.buildstash;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.BuildStepMonitor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WithJenkins
+public class BuildstashBuilderConcurrentTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String originalApiBaseUrl;
+
+    /** Released once both builds have requested upload URLs, so a serialized second build would time out. */
+    private final CountDownLatch bothRequested = new CountDownLatch(2);
+    private final AtomicInteger buildIds = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        server.createContext("/api/v1/upload/request", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            bothRequested.countDown();
+            try {
+                if (!bothRequested.await(30, TimeUnit.SECONDS)) {
+                    respond(exchange, 500, "{\"message\":\"uploads were not concurrent\"}");
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 500, "{}");
+                return;
+            }
+            respond(exchange, 200, "{\"pending_upload_id\":\"p" + buildIds.incrementAndGet() + "\","
+                    + "\"primary_file\":{\"chunked_upload\":false,"
+                    + "\"presigned_data\":{\"url\":\"" + baseUrl + "/storage\",\"headers\":{}}}}");
+        });
+        server.createContext("/storage", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, 200, "");
+        });
+        server.createContext("/api/v1/upload/verify", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, 200, "{\"build_id\":\"b" + buildIds.incrementAndGet() + "\",\"pending_processing\":false}");
+        });
+        server.start();
+
+        originalApiBaseUrl = BuildstashUploadService.API_BASE_URL;
+        BuildstashUploadService.API_BASE_URL = baseUrl + "/api/v1";
+    }
+
+    @AfterEach
+    public void stopServer() {
+        BuildstashUploadService.API_BASE_URL = originalApiBaseUrl;
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentBuildsUploadInParallel(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject();
+        project.setConcurrentBuild(true);
+        project.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace().child("app.apk").write("apk", "UTF-8");
+                return true;
+            }
+        });
+        BuildstashBuilder builder = new BuildstashBuilder();
+        builder.setApiKey("test-key");
+        builder.setPrimaryFilePath("app.apk");
+        builder.setVersionComponent1Major("1");
+        builder.setVersionComponent2Minor("0");
+        builder.setVersionComponent3Patch("0");
+        builder.setPlatform("android");
+        builder.setStream("default");
+        project.getPublishersList().add(builder);
+        assertEquals(BuildStepMonitor.NONE, builder.getRequiredMonitorService());
+
+        // Each build blocks in its upload until the other one has started uploading too
+        FreeStyleBuild first = project.scheduleBuild2(0).waitForStart();
+        FreeStyleBuild second = project.scheduleBuild2(0).waitForStart();
+        j.assertBuildStatusSuccess(j.waitForCompletion(first));
+        j.assertBuildStatusSuccess(j.waitForCompletion(second));
+
+        assertEquals(1, first.getAction(BuildstashBuildAction.class).getResponses().size());
+        assertEquals(1, second.getAction(BuildstashBuildAction.class).getResponses().size());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+}
@@ -1,8 +1,19 @@
 package com.buildstash;
 
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.tasks.ArtifactArchiver;
 import hudson.util.Secret;
 import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.IOException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -44,4 +55,36 @@ public class BuildstashBuilderTest {
         assertEquals("git", builder.getVcHostType());
         assertEquals("github", builder.getVcHost());
     }
+
+    @Test
+    @WithJenkins
+    public void testUploadAfterBuildSkippedForFailedBuild(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject();
+        project.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace().child("app.apk").write("apk", "UTF-8");
+                build.setResult(Result.FAILURE);
+                return true;
+            }
+        });
+        project.getPublishersList().add(new ArtifactArchiver("app.apk"));
+        BuildstashBuilder builder = new BuildstashBuilder();
+        builder.setApiKey(Secret.fromString("test-key"));
+        builder.setPrimaryFilePath("app.apk");
+        builder.setVersionComponent1Major("1");
+        builder.setVersionComponent2Minor("0");
+        builder.setVersionComponent3Patch("0");
+        builder.setPlatform("android");
+        builder.setStream("default");
+        builder.setUploadAfterBuild(true);
+        project.getPublishersList().add(builder);
+
+        FreeStyleBuild build = j.assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0));
+
+        j.assertLogContains("Skipping Buildstash upload of app.apk because the build result is FAILURE", build);
+        assertTrue(build.getActions(BuildstashDeferredUpload.class).isEmpty());
+        assertNull(build.getAction(BuildstashBuildAction.class));
+    }
 }
@@ -0,0 +1,54 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BuildstashCircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final BuildstashCircuitBreaker breaker = new BuildstashCircuitBreaker(3, Duration.ofSeconds(60), now::get);
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            breaker.acquire();
+            breaker.onFailure("upload URL request returned 503");
+        }
+        breaker.acquire();
+        breaker.onSuccess();
+        assertEquals(BuildstashCircuitBreaker.State.CLOSED, breaker.getState());
+
+        for (int i = 0; i < 3; i++) {
+            breaker.acquire();
+            breaker.onFailure("upload URL request returned 503");
+        }
+        assertEquals(BuildstashCircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitOpenException.class, breaker::acquire);
+        assertFalse(breaker.allowsRequests());
+    }
+
+    @Test
+    public void testHalfOpenProbe() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure("connection refused");
+        }
+        now.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        // Only one probe at a time; a failed probe opens the breaker again
+        breaker.acquire();
+        assertEquals(BuildstashCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertThrows(CircuitOpenException.class, breaker::acquire);
+        breaker.onFailure("connection refused");
+        assertEquals(BuildstashCircuitBreaker.State.OPEN, breaker.getState());
+
+        now.addAndGet(Duration.ofSeconds(61).toNanos());
+        breaker.acquire();
+        breaker.onSuccess();
+        assertEquals(BuildstashCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowsRequests());
+    }
+}
@@ -0,0 +1,126 @@
+package com.buildstash;
+
+import hudson.model.FreeStyleProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BuildstashMetricsStoreTest {
+
+    @Test
+    public void testAppendAndRead(@TempDir Path dir) throws Exception {
+        BuildstashMetricsStore store = new BuildstashMetricsStore(dir.resolve(BuildstashMetricsStore.FILE_NAME).toFile());
+        assertTrue(store.getRecords().isEmpty());
+
+        store.append(record(1));
+        store.append(record(2));
+
+        List<BuildstashTrendRecord> records = store.getRecords();
+        assertEquals(2, records.size());
+        assertEquals(1, records.get(0).getBuildNumber());
+        assertEquals(2, records.get(1).getBuildNumber());
+        assertEquals(1024, records.get(1).getPrimaryFileBytes());
+    }
+
+    @Test
+    public void testPicksUpLinesAppendedElsewhere(@TempDir Path dir) throws Exception {
+        File file = dir.resolve(BuildstashMetricsStore.FILE_NAME).toFile();
+        BuildstashMetricsStore store = new BuildstashMetricsStore(file);
+        store.append(record(1));
+        assertEquals(1, store.getRecords().size());
+
+        // Another writer appends to the same file
+        new BuildstashMetricsStore(file).append(record(2));
+
+        List<BuildstashTrendRecord> records = store.getRecords();
+        assertEquals(2, records.size());
+        assertEquals(2, records.get(1).getBuildNumber());
+    }
+
+    @Test
+    public void testSkipsCorruptAndPartialLines(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve(BuildstashMetricsStore.FILE_NAME);
+        BuildstashMetricsStore store = new BuildstashMetricsStore(file.toFile());
+        store.append(record(1));
+        write(file, "not json\n");
+        store.append(record(2));
+
+        // A line still being written is not read until it is complete
+        String line = BuildstashJson.WRITER.writeValueAsString(record(3));
+        write(file, line.substring(0, 10));
+        assertEquals(2, store.getRecords().size());
+
+        write(file, line.substring(10) + "\n");
+        List<BuildstashTrendRecord> records = store.getRecords();
+        assertEquals(3, records.size());
+        assertEquals(3, records.get(2).getBuildNumber());
+    }
+
+    @Test
+    public void testCompactsPastTwiceTheLimit(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve(BuildstashMetricsStore.FILE_NAME);
+        BuildstashMetricsStore store = new BuildstashMetricsStore(file.toFile());
+        for (int i = 1; i <= BuildstashMetricsStore.MAX_RECORDS * 2; i++) {
+            store.append(record(i));
+        }
+        assertEquals(BuildstashMetricsStore.MAX_RECORDS * 2, Files.readAllLines(file).size());
+
+        store.append(record(BuildstashMetricsStore.MAX_RECORDS * 2 + 1));
+
+        List<BuildstashTrendRecord> records = store.getRecords();
+        assertEquals(BuildstashMetricsStore.MAX_RECORDS, records.size());
+        assertEquals(BuildstashMetricsStore.MAX_RECORDS + 2, records.get(0).getBuildNumber());
+        assertEquals(BuildstashMetricsStore.MAX_RECORDS * 2 + 1, records.get(records.size() - 1).getBuildNumber());
+        assertEquals(BuildstashMetricsStore.MAX_RECORDS, Files.readAllLines(file).size());
+
+        // Reading the compacted file from scratch gives the same history
+        assertEquals(BuildstashMetricsStore.MAX_RECORDS, new BuildstashMetricsStore(file.toFile()).getRecords().size());
+    }
+
+    @Test
+    @WithJenkins
+    public void testStoresOnlyForJobsWithHistory(JenkinsRule j) throws Exception {
+        FreeStyleProject unused = j.createFreeStyleProject("unused");
+        assertNull(BuildstashMetricsStore.ifExists(unused));
+        assertTrue(BuildstashMetricsStore.recordsOf(unused).isEmpty());
+        assertNull(unused.getAction(BuildstashTrendAction.class));
+        assertFalse(BuildstashMetricsStore.isCached("unused"));
+
+        FreeStyleProject project = j.createFreeStyleProject("uploads");
+        BuildstashMetricsStore.forJob(project).append(record(1));
+        assertNotNull(project.getAction(BuildstashTrendAction.class));
+        assertTrue(BuildstashMetricsStore.isCached("uploads"));
+
+        // A renamed job reads its history from the new location
+        project.renameTo("renamed");
+        assertFalse(BuildstashMetricsStore.isCached("uploads"));
+        assertEquals(1, BuildstashMetricsStore.recordsOf(project).size());
+
+        project.delete();
+        assertFalse(BuildstashMetricsStore.isCached("renamed"));
+    }
+
+    private static BuildstashTrendRecord record(int buildNumber) {
+        BuildstashTrendRecord record = new BuildstashTrendRecord();
+        record.setBuildNumber(buildNumber);
+        record.setPlatform("android");
+        record.setStream("default");
+        record.setPrimaryFileBytes(1024);
+        record.setTransferMillis(100);
+        return record;
+    }
+
+    private static void write(Path file, String text) throws Exception {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
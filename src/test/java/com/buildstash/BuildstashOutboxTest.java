@@ -0,0 +1,95 @@
+package com.buildstash;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hudson.FilePath;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WithJenkins
+public class BuildstashOutboxTest {
+
+    private HttpServer server;
+    private String originalApiBaseUrl;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/v1/upload/request", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, 400, "{\"message\":\"invalid platform\"}");
+        });
+        server.start();
+
+        originalApiBaseUrl = BuildstashUploadService.API_BASE_URL;
+        BuildstashUploadService.API_BASE_URL = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1";
+    }
+
+    @AfterEach
+    public void stopServer() {
+        BuildstashUploadService.API_BASE_URL = originalApiBaseUrl;
+        server.stop(0);
+    }
+
+    @Test
+    public void testRejectedDeliveryIsNoLongerQueued(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject();
+        FreeStyleBuild run = j.buildAndAssertSuccess(project);
+        FilePath workspace = j.jenkins.getRootPath().child("outbox-test");
+        workspace.child("app.apk").write("apk", "UTF-8");
+
+        BuildstashUploadRequest request = new BuildstashUploadRequest();
+        request.setWorkspace(workspace);
+        request.setStructure("file");
+        request.setPrimaryFilePath("app.apk");
+        request.setVersionComponent1Major("1");
+        request.setVersionComponent2Minor("0");
+        request.setVersionComponent3Patch("0");
+        request.setPlatform("android");
+        request.setStream("default");
+
+        BuildstashUploadResponse queued = BuildstashOutbox.enqueue(run, request, "test-key", null, TaskListener.NULL);
+        BuildstashUploadHelper.recordResults(run, request, queued, TaskListener.NULL);
+        assertTrue(run.getAction(BuildstashBuildAction.class).getResponse().isQueued());
+
+        File entryDir = new File(BuildstashOutbox.getRootDir(), queued.getOutboxId());
+        BuildstashOutbox.deliver(entryDir);
+
+        assertFalse(entryDir.exists());
+        BuildstashUploadResponse recorded = run.getAction(BuildstashBuildAction.class).getResponse();
+        assertEquals(queued.getOutboxId(), recorded.getOutboxId());
+        assertTrue(recorded.isDeliveryFailed());
+        assertFalse(recorded.isQueued());
+        assertTrue(recorded.getMessage().contains("400"));
+
+        // The failed state is kept in the run's upload file
+        List<BuildstashUploadResponse> persisted = BuildstashBuildAction.readUploads(
+                new File(run.getRootDir(), BuildstashBuildAction.FILE_NAME), null);
+        assertEquals(1, persisted.size());
+        assertTrue(persisted.get(0).isDeliveryFailed());
+        assertFalse(persisted.get(0).isQueued());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
@@ -0,0 +1,104 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WithJenkins
+public class BuildstashPendingUploadsTest {
+
+    private final BuildstashCircuitBreaker breaker = new BuildstashCircuitBreaker(1, Duration.ofSeconds(60), System::nanoTime);
+
+    @AfterEach
+    public void releaseAll() {
+        for (String id : List.of("p1", "p2", "p3")) {
+            BuildstashPendingUploads.release(id);
+        }
+    }
+
+    @Test
+    public void testRegisterReleaseComplete(JenkinsRule j) throws Exception {
+        BuildstashPendingUploads.register("p1", "key");
+        BuildstashPendingUploads.register("p2", "key");
+        BuildstashPendingUploads.register("p2", "key");
+        assertTrue(new File(j.jenkins.getRootDir(), BuildstashPendingUploads.FILE_NAME).isFile());
+
+        // Uploads still working on their pending upload are not orphans
+        assertTrue(orphanIds().isEmpty());
+
+        BuildstashPendingUploads.release("p1");
+        BuildstashPendingUploads.release("p2");
+        assertEquals(List.of("p1", "p2"), orphanIds());
+
+        BuildstashPendingUploads.complete("p1");
+        assertEquals(List.of("p2"), orphanIds());
+    }
+
+    @Test
+    public void testSweepCancelsOnlyOrphans(JenkinsRule j) throws Exception {
+        BuildstashPendingUploads.register("p1", "key");
+        BuildstashPendingUploads.register("p2", "key");
+        BuildstashPendingUploads.register("p3", "key");
+        BuildstashPendingUploads.release("p1");
+        BuildstashPendingUploads.release("p3");
+
+        List<String> cancelled = new ArrayList<>();
+        int count = BuildstashPendingUploads.sweep(breaker, entry -> {
+            cancelled.add(entry.getPendingUploadId());
+            // p3 fails to cancel and stays recorded for the next sweep
+            return !"p3".equals(entry.getPendingUploadId());
+        });
+
+        assertEquals(1, count);
+        assertEquals(List.of("p1", "p3"), cancelled);
+        assertEquals(List.of("p3"), orphanIds());
+    }
+
+    @Test
+    public void testSweepRechecksActiveBeforeCancelling(JenkinsRule j) throws Exception {
+        BuildstashPendingUploads.register("p1", "key");
+        BuildstashPendingUploads.register("p2", "key");
+        BuildstashPendingUploads.release("p1");
+        BuildstashPendingUploads.release("p2");
+
+        List<String> cancelled = new ArrayList<>();
+        BuildstashPendingUploads.sweep(breaker, entry -> {
+            // An upload replaying its request gets p2 back while the sweep is running
+            BuildstashPendingUploads.register("p2", "key");
+            cancelled.add(entry.getPendingUploadId());
+            return true;
+        });
+
+        assertEquals(List.of("p1"), cancelled);
+        BuildstashPendingUploads.release("p2");
+        assertEquals(List.of("p2"), orphanIds());
+    }
+
+    @Test
+    public void testSweepWaitsWhileCircuitIsOpen(JenkinsRule j) throws Exception {
+        BuildstashPendingUploads.register("p1", "key");
+        BuildstashPendingUploads.release("p1");
+        breaker.onFailure("connection refused");
+
+        List<String> cancelled = new ArrayList<>();
+        assertEquals(0, BuildstashPendingUploads.sweep(breaker, entry -> cancelled.add(entry.getPendingUploadId())));
+        assertTrue(cancelled.isEmpty());
+        assertEquals(List.of("p1"), orphanIds());
+    }
+
+    private static List<String> orphanIds() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (BuildstashPendingUploads.Entry entry : BuildstashPendingUploads.getOrphans()) {
+            ids.add(entry.getPendingUploadId());
+        }
+        return ids;
+    }
+}
@@ -43,5 +43,15 @@ public class BuildstashStepTest {
         assertEquals("file", step.getStructure());
         assertEquals("git", step.getVcHostType());
         assertEquals("github", step.getVcHost());
+        assertFalse(step.isWaitForProcessing());
+        assertEquals(30, step.getProcessingTimeoutMinutes());
+    }
+
+    @Test
+    public void testAwaitProcessingDescriptorProperties() {
+        BuildstashAwaitProcessingStep.DescriptorImpl descriptor = new BuildstashAwaitProcessingStep.DescriptorImpl();
+
+        assertEquals("buildstashAwaitProcessing", descriptor.getFunctionName());
+        assertEquals(30, new BuildstashAwaitProcessingStep().getTimeoutMinutes());
     }
 }
@@ -0,0 +1,39 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BuildstashTimeoutsTest {
+
+    @Test
+    public void testUnsetValuesFallBack() {
+        BuildstashTimeouts global = new BuildstashTimeouts();
+        global.setRequestTimeoutSeconds(20);
+        global.setUploadDeadlineMinutes(30);
+
+        BuildstashTimeouts step = new BuildstashTimeouts();
+        step.setPartTimeoutSeconds(10);
+
+        BuildstashTimeouts merged = step.withFallback(global);
+        assertEquals(Duration.ofSeconds(20), merged.requestTimeout());
+        assertEquals(Duration.ofMinutes(30), merged.uploadDeadline());
+        assertEquals(Duration.ofSeconds(BuildstashTimeouts.DEFAULT_CONNECT_TIMEOUT_SECONDS), merged.connectTimeout());
+        // 10s base plus 640 KB at the default 64 KB/s
+        assertEquals(Duration.ofSeconds(20), merged.transferTimeout(640 * 1024));
+    }
+
+    @Test
+    public void testStepCanDisableGlobalDeadline() {
+        BuildstashTimeouts global = new BuildstashTimeouts();
+        global.setUploadDeadlineMinutes(30);
+
+        BuildstashTimeouts step = new BuildstashTimeouts();
+        step.setUploadDeadlineMinutes(BuildstashTimeouts.NO_DEADLINE);
+
+        assertNull(step.withFallback(global).uploadDeadline());
+        assertNull(new BuildstashTimeouts().uploadDeadline());
+    }
+}
@@ -0,0 +1,80 @@
+package com.buildstash;
+
+import hudson.FilePath;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BuildstashUploadRequestTest {
+
+    @Test
+    public void testPayloadFields() throws Exception {
+        BuildstashUploadRequest request = new BuildstashUploadRequest();
+        request.setStructure("file");
+        request.setVersionComponent1Major("1");
+        request.setVersionComponent2Minor("2");
+        request.setVersionComponent3Patch("3");
+        request.setLabels(List.of("beta", "qa"));
+        request.setVcBranch("main");
+        request.setPlatform("android");
+
+        Map<String, Object> payload = request.toMap();
+
+        assertEquals("file", payload.get("structure"));
+        assertEquals("1", payload.get("version_component_1_major"));
+        assertEquals(List.of("beta", "qa"), payload.get("labels"));
+        assertEquals("main", payload.get("vc_branch"));
+        assertEquals("android", payload.get("platform"));
+        // Required fields are always sent, optional ones only when set
+        assertTrue(payload.containsKey("stream"));
+        assertNull(payload.get("stream"));
+        assertFalse(payload.containsKey("notes"));
+        assertFalse(payload.containsKey("architectures"));
+        assertFalse(payload.containsKey("primary_file"));
+    }
+
+    @Test
+    public void testIdempotencyKeyFollowsFileMetadata(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("app.apk");
+        Files.writeString(file, "one", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000L));
+
+        BuildstashUploadRequest request = new BuildstashUploadRequest();
+        request.setFileSource(UploadFileSource.of(new FilePath(dir.toFile())));
+        request.setCiRunId("42");
+        request.setVersionComponent1Major("1");
+        request.setPrimaryFilePath("app.apk");
+        String key = request.getIdempotencyKey();
+        assertNotNull(key);
+
+        // Asking again, e.g. for a retried request, gives the same key
+        request.setPrimaryFilePath("app.apk");
+        assertEquals(key, request.getIdempotencyKey());
+
+        // A rebuilt file is a different upload
+        Files.writeString(file, "three", StandardCharsets.UTF_8);
+        request.setPrimaryFilePath("app.apk");
+        assertNotEquals(key, request.getIdempotencyKey());
+
+        // A fixed key, as set by the outbox, survives the files moving
+        request.setIdempotencyKey(key);
+        request.setPrimaryFilePath("missing.apk");
+        assertEquals(key, request.getIdempotencyKey());
+    }
+
+    @Test
+    public void testNoIdempotencyKeyWithoutPrimaryFile(@TempDir Path dir) throws Exception {
+        BuildstashUploadRequest request = new BuildstashUploadRequest();
+        request.setFileSource(UploadFileSource.of(new FilePath(dir.toFile())));
+        request.setPrimaryFilePath("missing.apk");
+        assertNull(request.getIdempotencyKey());
+    }
+}
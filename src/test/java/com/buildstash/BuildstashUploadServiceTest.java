@@ -0,0 +1,132 @@
+package com.buildstash;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WithJenkins
+public class BuildstashUploadServiceTest {
+
+    private static final RetryPolicy FAST_RETRIES = new RetryPolicy(3, new Backoff(10, 10, 1.0, 0), RetryPolicy.TRANSIENT_STATUS_CODES);
+
+    private HttpServer server;
+    private String originalApiBaseUrl;
+
+    /** Status returned by the first {@link #failingRequests} upload URL requests; later requests succeed. */
+    private volatile int failureStatus;
+    private volatile int failingRequests = 1;
+    private final AtomicInteger uploadRequests = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        server.createContext("/api/v1/upload/request", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            if (uploadRequests.incrementAndGet() <= failingRequests) {
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                respond(exchange, failureStatus, "{\"message\":\"try again\"}");
+                return;
+            }
+            respond(exchange, 200, "{\"pending_upload_id\":\"p1\","
+                    + "\"primary_file\":{\"chunked_upload\":false,"
+                    + "\"presigned_data\":{\"url\":\"" + baseUrl + "/storage\",\"headers\":{}}}}");
+        });
+        server.createContext("/storage", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, 200, "");
+        });
+        server.createContext("/api/v1/upload/verify", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, 200, "{\"build_id\":\"b1\",\"pending_processing\":false}");
+        });
+        server.start();
+
+        originalApiBaseUrl = BuildstashUploadService.API_BASE_URL;
+        BuildstashUploadService.API_BASE_URL = baseUrl + "/api/v1";
+    }
+
+    @AfterEach
+    public void stopServer() {
+        BuildstashUploadService.API_BASE_URL = originalApiBaseUrl;
+        server.stop(0);
+    }
+
+    @Test
+    public void testRequestTimeoutOnUploadRequestIsRetried(JenkinsRule j) throws Exception {
+        failureStatus = 408;
+        BuildstashUploadService service = new BuildstashUploadService("upload-service-test-408", TaskListener.NULL);
+        service.setRetryPolicy(FAST_RETRIES);
+
+        BuildstashUploadResponse response = service.upload(request(j));
+
+        assertEquals("b1", response.getBuildId());
+        assertEquals(2, uploadRequests.get());
+        assertEquals(1, response.getMetrics().getRetries());
+    }
+
+    @Test
+    public void testClientErrorOnUploadRequestIsNotRetried(JenkinsRule j) throws Exception {
+        failureStatus = 400;
+        BuildstashUploadService service = new BuildstashUploadService("upload-service-test-400", TaskListener.NULL);
+        service.setRetryPolicy(FAST_RETRIES);
+
+        BuildstashHttpException e = assertThrows(BuildstashHttpException.class, () -> service.upload(request(j)));
+
+        assertEquals(400, e.getStatusCode());
+        assertEquals(1, uploadRequests.get());
+    }
+
+    @Test
+    public void testRateLimitedUploadRequestIsRetriedByThePolicyOnly(JenkinsRule j) throws Exception {
+        failureStatus = 429;
+        failingRequests = Integer.MAX_VALUE;
+        BuildstashUploadService service = new BuildstashUploadService("upload-service-test-429", TaskListener.NULL);
+        service.setRetryPolicy(FAST_RETRIES);
+
+        BuildstashHttpException e = assertThrows(BuildstashHttpException.class, () -> service.upload(request(j)));
+
+        // One request per attempt of the retry policy, not a rate limit resend loop inside each attempt
+        assertEquals(429, e.getStatusCode());
+        assertEquals(FAST_RETRIES.getMaxAttempts(), uploadRequests.get());
+    }
+
+    private static BuildstashUploadRequest request(JenkinsRule j) throws Exception {
+        FilePath workspace = j.jenkins.getRootPath().child("upload-service-test");
+        workspace.child("app.apk").write("apk", "UTF-8");
+        BuildstashUploadRequest request = new BuildstashUploadRequest();
+        request.setWorkspace(workspace);
+        request.setStructure("file");
+        request.setPrimaryFilePath("app.apk");
+        request.setVersionComponent1Major("1");
+        request.setVersionComponent2Minor("0");
+        request.setVersionComponent3Patch("0");
+        request.setPlatform("android");
+        request.setStream("default");
+        return request;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,47 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChangelogReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testGitTextChangelog() throws Exception {
+        File changelog = write("commit 1234567890abcdef1234567890abcdef12345678\ntree abc\n\n    Message\n\ncommit fedcba9876543210\n");
+        assertEquals("1234567890abcdef1234567890abcdef12345678", ChangelogReader.firstRevision(changelog));
+    }
+
+    @Test
+    public void testXmlRevisionAttribute() throws Exception {
+        File changelog = write("<?xml version=\"1.0\"?>\n<log><logentry revision=\"4711\"><msg>x</msg></logentry><logentry revision=\"1\"/></log>");
+        assertEquals("4711", ChangelogReader.firstRevision(changelog));
+    }
+
+    @Test
+    public void testXmlRevisionElementInFirstEntryOnly() throws Exception {
+        assertEquals("77", ChangelogReader.firstRevision(write("<changelog><entry><changeNumber>77</changeNumber></entry></changelog>")));
+        assertNull(ChangelogReader.firstRevision(write("<changelog><entry><author>x</author></entry><entry><id>2</id></entry></changelog>")));
+    }
+
+    @Test
+    public void testMissingOrEmptyChangelog() throws Exception {
+        assertNull(ChangelogReader.firstRevision(tempDir.resolve("missing.xml").toFile()));
+        assertNull(ChangelogReader.firstRevision(write("")));
+        assertNull(ChangelogReader.firstRevision(write("<log/>")));
+    }
+
+    private File write(String content) throws Exception {
+        Path file = Files.createTempFile(tempDir, "changelog", ".xml");
+        Files.writeString(file, content);
+        return file.toFile();
+    }
+}
@@ -0,0 +1,50 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileStatCallableTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testResolvesAllPathsInOneCall() throws Exception {
+        Files.createDirectories(tempDir.resolve("out"));
+        Files.write(tempDir.resolve("out/app.apk"), "hello".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, FileStat> stats = new FileStatCallable(List.of("out/app.apk", "missing.obb"), false)
+                .invoke(tempDir.toFile(), null);
+
+        FileStat primary = stats.get("out/app.apk");
+        assertTrue(primary.exists());
+        assertEquals("app.apk", primary.getName());
+        assertEquals(5, primary.getSize());
+        assertTrue(primary.getLastModified() > 0);
+        assertNull(primary.getSha256());
+
+        FileStat missing = stats.get("missing.obb");
+        assertFalse(missing.exists());
+        assertEquals("missing.obb", missing.getName());
+        assertEquals(0, missing.getSize());
+    }
+
+    @Test
+    public void testDigestAndAbsolutePath() throws Exception {
+        Path file = Files.write(tempDir.resolve("app.ipa"), "hello".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, FileStat> stats = new FileStatCallable(List.of(file.toString()), true)
+                .invoke(tempDir.resolve("elsewhere").toFile(), null);
+
+        assertEquals("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824",
+                stats.get(file.toString()).getSha256());
+    }
+}
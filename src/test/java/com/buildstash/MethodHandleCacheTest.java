@@ -0,0 +1,39 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MethodHandleCacheTest {
+
+    public static class Revision {
+        public String getSha1String() { return "abc123"; }
+    }
+
+    public static class RevisionState {
+        public Object getRevision(String module) { return module == null ? 42 : -1; }
+    }
+
+    @Test
+    public void testInvokesNoArgMethod() throws Exception {
+        assertEquals("abc123", MethodHandleCache.invokeForString(new Revision(), "getSha1String"));
+        assertSame(MethodHandleCache.find(Revision.class, "getSha1String"), MethodHandleCache.find(Revision.class, "getSha1String"));
+    }
+
+    @Test
+    public void testMissingMethodResolvesToNull() throws Exception {
+        assertNull(MethodHandleCache.find(Revision.class, "getRemoteUrls"));
+        assertNull(MethodHandleCache.invoke(new Revision(), "getRemoteUrls"));
+        assertNull(MethodHandleCache.invoke(null, "getSha1String"));
+    }
+
+    @Test
+    public void testAnyArityPassesNulls() throws Exception {
+        assertNull(MethodHandleCache.find(RevisionState.class, "getRevision"));
+
+        MethodHandleCache.CachedMethod getRevision = MethodHandleCache.findAnyArity(RevisionState.class, "getRevision");
+        assertNotNull(getRevision);
+        assertEquals(1, getRevision.getParameterCount());
+        assertEquals(42, getRevision.invoke(new RevisionState()));
+    }
+}
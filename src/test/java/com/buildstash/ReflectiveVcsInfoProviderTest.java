@@ -0,0 +1,22 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReflectiveVcsInfoProviderTest {
+
+    @Test
+    public void testChangelogsSortByCheckoutIndex() {
+        String[] names = {"changelog10.xml", "changelog2.xml", "changelog0.xml", "changelog1.xml", "changelog11.xml"};
+        ReflectiveVcsInfoProvider.sortChangelogs(names);
+        assertArrayEquals(new String[] {"changelog0.xml", "changelog1.xml", "changelog2.xml", "changelog10.xml", "changelog11.xml"}, names);
+    }
+
+    @Test
+    public void testUnnumberedChangelogs() {
+        String[] names = {"changelog-extra.xml", "changelog3.xml", "changelog.xml"};
+        ReflectiveVcsInfoProvider.sortChangelogs(names);
+        assertArrayEquals(new String[] {"changelog.xml", "changelog3.xml", "changelog-extra.xml"}, names);
+    }
+}
@@ -0,0 +1,39 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(3, new Backoff(100, 1_000, 2.0, 0), RetryPolicy.TRANSIENT_STATUS_CODES);
+
+    @Test
+    public void testRetryableFailures() {
+        assertTrue(policy.isRetryable(new BuildstashHttpException("Failed to upload chunk: 500", 500)));
+        assertTrue(policy.isRetryable(new BuildstashHttpException("Failed to upload chunk: 503", 503)));
+        assertTrue(policy.isRetryable(new ConnectException("Connection refused")));
+        assertTrue(policy.isRetryable(new BuildstashTimeoutException(UploadPhase.TRANSFER, Duration.ofSeconds(120), null)));
+
+        assertFalse(policy.isRetryable(new BuildstashHttpException("Failed to verify upload: 422", 422)));
+        assertFalse(policy.isRetryable(new BuildstashTimeoutException(UploadPhase.DEADLINE, Duration.ofMinutes(45), null)));
+        assertFalse(policy.isRetryable(new InterruptedException()));
+        assertFalse(policy.isRetryable(new IllegalStateException()));
+    }
+
+    @Test
+    public void testAttemptsAndBackoff() {
+        IOException error = new IOException("Connection reset");
+        assertTrue(policy.shouldRetry(error, 1));
+        assertTrue(policy.shouldRetry(error, 2));
+        assertFalse(policy.shouldRetry(error, 3));
+
+        assertEquals(100, policy.delayMillis(1));
+        assertEquals(200, policy.delayMillis(2));
+        assertEquals(1_000, policy.delayMillis(10));
+    }
+}
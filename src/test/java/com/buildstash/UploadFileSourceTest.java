@@ -0,0 +1,37 @@
+package com.buildstash;
+
+import jenkins.util.VirtualFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadFileSourceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testArchivedArtifacts() throws Exception {
+        Files.createDirectories(tempDir.resolve("out"));
+        Files.write(tempDir.resolve("out/app.apk"), "hello".getBytes(StandardCharsets.UTF_8));
+        UploadFileSource source = UploadFileSource.of(VirtualFile.forFile(tempDir.toFile()));
+
+        Map<String, FileStat> stats = source.stat(List.of("out/app.apk", "missing.obb"));
+
+        assertTrue(stats.get("out/app.apk").exists());
+        assertEquals("app.apk", stats.get("out/app.apk").getName());
+        assertEquals(5, stats.get("out/app.apk").getSize());
+        assertFalse(stats.get("missing.obb").exists());
+        try (InputStream in = source.open("out/app.apk")) {
+            assertEquals("hello", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
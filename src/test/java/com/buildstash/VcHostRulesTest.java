@@ -0,0 +1,104 @@
+package com.buildstash;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VcHostRulesTest {
+
+    @Test
+    public void testParseHost() {
+        assertEquals("github.com", VcHostRules.parseHost("https://github.com/user/repo.git"));
+        assertEquals("github.com", VcHostRules.parseHost("git@github.com:user/repo.git"));
+        assertEquals("git.example.com", VcHostRules.parseHost("ssh://git@Git.Example.com:7999/scm/proj/repo.git"));
+        assertNull(VcHostRules.parseHost("/srv/git/repo.git"));
+    }
+
+    @Test
+    public void testBuiltInHosts() {
+        assertEquals("github", VcHostRules.detect("git@github.com:user/repo.git", null));
+        assertEquals("gitlab", VcHostRules.detect("https://gitlab.com/group/sub/repo", null));
+        assertEquals("azure-repos", VcHostRules.detect("https://org@dev.azure.com/org/proj/_git/repo", null));
+        assertEquals("azure-repos", VcHostRules.detect("https://org.visualstudio.com/proj/_git/repo", null));
+        assertEquals("sourcehut", VcHostRules.detect("https://git.sr.ht/~user/repo", null));
+        // Same hosts as the keyword matching this table replaced
+        assertEquals("sourceforge", VcHostRules.detect("https://sourceforge.com/p/project/code", null));
+        assertNull(VcHostRules.detect("https://sourceforge.net/p/project/code", null));
+    }
+
+    @Test
+    public void testKeywordFallback() {
+        assertEquals("gitlab-self", VcHostRules.detect("https://gitlab.example.com/group/repo.git", null));
+        assertEquals("aws-codecommit", VcHostRules.detect("https://git-codecommit.us-east-1.amazonaws.com/v1/repos/repo", null));
+        assertNull(VcHostRules.detect("https://git.example.com/repo.git", null));
+    }
+
+    @Test
+    public void testCustomRules() {
+        VcHostRule exact = new VcHostRule();
+        exact.setHost("git.example.com");
+        exact.setVcHost("gitea");
+        VcHostRule wildcard = new VcHostRule();
+        wildcard.setHost("*.corp.example.org");
+        wildcard.setVcHost("gitlab-self");
+        VcHostRules rules = VcHostRules.compile(List.of(exact, wildcard));
+
+        assertEquals("gitea", VcHostRules.detect("https://git.example.com/repo.git", rules));
+        assertEquals("gitlab-self", VcHostRules.detect("git@scm.corp.example.org:team/repo.git", rules));
+        assertEquals("github", VcHostRules.detect("https://github.com/user/repo", rules));
+    }
+
+    @Test
+    public void testCommitUrls() {
+        assertEquals("https://github.com/user/repo/commit/abc123",
+                commitUrl("https://github.com/user/repo.git", "abc123", null));
+        assertEquals("https://gitlab.com/group/repo/-/commit/abc123",
+                commitUrl("https://gitlab.com/group/repo/", "abc123", null));
+        assertEquals("https://sourceforge.com/p/project/code/ci/abc123/",
+                commitUrl("https://sourceforge.com/p/project/code", "abc123", null));
+        assertEquals("https://sourceforge.com/p/project/code/42/",
+                commitUrl("https://sourceforge.com/p/project/code", "42", null));
+        assertNull(commitUrl("https://git.example.com/repo.git", "abc123", null));
+        assertNull(commitUrl("https://perforce.example.com/depot", "42", null));
+    }
+
+    @Test
+    public void testCustomRuleCommitUrlsAndRepoNames() {
+        VcHostRule gitea = new VcHostRule();
+        gitea.setHost("git.example.com");
+        gitea.setVcHost("gitea");
+        VcHostRule bitbucket = new VcHostRule();
+        bitbucket.setHost("stash.example.com");
+        bitbucket.setVcHost("bitbucket");
+        VcHostRule cgit = new VcHostRule();
+        cgit.setHost("cgit.example.com");
+        cgit.setVcHost("gitlab-self");
+        cgit.setCommitUrlTemplate("{repoUrl}/commit/?id={commit}");
+        VcHostRules rules = VcHostRules.compile(List.of(gitea, bitbucket, cgit));
+
+        assertEquals("https://git.example.com/team/repo/commit/abc123",
+                commitUrl("https://git.example.com/team/repo.git", "abc123", rules));
+        assertEquals("https://cgit.example.com/repo/commit/?id=abc123",
+                commitUrl("https://cgit.example.com/repo.git", "abc123", rules));
+
+        VcHostFormat stash = VcHostRules.resolve("https://stash.example.com/scm/proj/repo.git", rules);
+        assertEquals("repo", VersionControlDetector.extractRepoNameFromUrl("https://stash.example.com/scm/proj/repo.git", stash));
+        assertEquals("repo", VersionControlDetector.extractRepoNameFromUrl(
+                "https://stash.example.com/projects/PROJ/repos/repo", stash));
+    }
+
+    @Test
+    public void testRepoNames() {
+        String azure = "https://dev.azure.com/org/proj/_git/repo";
+        assertEquals("repo", VersionControlDetector.extractRepoNameFromUrl(azure, VcHostRules.resolve(azure, null)));
+        String gitlab = "https://gitlab.com/group/sub/repo.git";
+        assertEquals("repo", VersionControlDetector.extractRepoNameFromUrl(gitlab, VcHostRules.resolve(gitlab, null)));
+        assertEquals("repo", VersionControlDetector.extractRepoNameFromUrl("https://git.example.com/repo.git", null));
+    }
+
+    private static String commitUrl(String repoUrl, String commit, VcHostRules rules) {
+        return VersionControlDetector.generateCommitUrl(repoUrl, commit, VcHostRules.resolve(repoUrl, rules));
+    }
+}
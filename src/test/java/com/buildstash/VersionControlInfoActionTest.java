@@ -0,0 +1,52 @@
+package com.buildstash;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.InvisibleAction;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WithJenkins
+public class VersionControlInfoActionTest {
+
+    /** Stands in for an SCM action added by a later checkout, e.g. Subversion revision state. */
+    public static class CheckoutAction extends InvisibleAction {
+    }
+
+    @Test
+    public void testInvalidatedByNewActions(JenkinsRule j) throws Exception {
+        FreeStyleBuild build = j.buildAndAssertSuccess(j.createFreeStyleProject());
+        VersionControlInfo info = new VersionControlInfo();
+        VersionControlInfoAction.store(build, info);
+        assertSame(info, VersionControlInfoAction.getCurrent(build));
+
+        // The plugin's own actions don't count as SCM state
+        BuildstashBuildAction.getOrCreate(build);
+        assertSame(info, VersionControlInfoAction.getCurrent(build));
+
+        build.addAction(new CheckoutAction());
+        assertNull(VersionControlInfoAction.getCurrent(build));
+    }
+
+    @Test
+    public void testInvalidatedByChangelogs(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject();
+        FreeStyleBuild build = j.buildAndAssertSuccess(project);
+        VersionControlInfoAction.store(build, new VersionControlInfo());
+
+        File changelog = new File(build.getRootDir(), "changelog3.xml");
+        Files.writeString(changelog.toPath(), "<log/>", StandardCharsets.UTF_8);
+        assertNull(VersionControlInfoAction.getCurrent(build));
+
+        VersionControlInfoAction.store(build, new VersionControlInfo());
+        Files.writeString(changelog.toPath(), "<log><entry/></log>", StandardCharsets.UTF_8);
+        assertNull(VersionControlInfoAction.getCurrent(build));
+    }
+}